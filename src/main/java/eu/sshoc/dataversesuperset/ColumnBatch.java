@@ -0,0 +1,348 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import eu.sshoc.dataversesuperset.readers.Utf8Slice;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable column-oriented buffer of converted rows. Typed columns are stored in primitive arrays
+ * (booleans and integers as {@code long}, dates as epoch days, times as seconds of the day,
+ * timestamps as epoch microseconds), text as UTF-8 in a shared arena. Null values are marked in a bitmap.
+ * Values are parsed straight from the cell characters without intermediate objects.
+ */
+public class ColumnBatch {
+	
+	private static final long MICROS_PER_SECOND = 1_000_000L;
+	private static final long SECONDS_PER_DAY = 86_400L;
+	
+	final ColumnType[] types;
+	final int capacity;
+	int rowCount;
+	
+	final long[][] longs;
+	final double[][] doubles;
+	final int[][] textStart;
+	final int[][] textEnd;
+	final long[][] nulls;
+	byte[] text = new byte[1 << 16];
+	int textLength;
+	
+	public ColumnBatch(ColumnType[] types, int capacity) {
+		this.types = types;
+		this.capacity = capacity;
+		longs = new long[types.length][];
+		doubles = new double[types.length][];
+		textStart = new int[types.length][];
+		textEnd = new int[types.length][];
+		nulls = new long[types.length][(capacity + 63) >>> 6];
+		for (int i = 0; i < types.length; i++) {
+			switch (types[i]) {
+			case FLOATING:
+				doubles[i] = new double[capacity];
+				break;
+			case TEXT:
+				textStart[i] = new int[capacity];
+				textEnd[i] = new int[capacity];
+				break;
+			default:
+				longs[i] = new long[capacity];
+			}
+		}
+	}
+	
+	public void clear() {
+		for (long[] columnNulls : nulls) {
+			Arrays.fill(columnNulls, 0, (rowCount + 63) >>> 6, 0L);
+		}
+		rowCount = 0;
+		textLength = 0;
+	}
+	
+	public boolean isFull() {
+		return rowCount == capacity;
+	}
+	
+	public int size() {
+		return rowCount;
+	}
+	
+	/**
+	 * Converts and appends one record, missing trailing cells are stored as nulls.
+	 */
+	public void addRow(List<? extends CharSequence> record) {
+		int row = rowCount;
+		for (int column = 0; column < types.length; column++) {
+			CharSequence value = column < record.size() ? record.get(column) : null;
+			if (value == null || (types[column] != ColumnType.TEXT && isBlank(value))) {
+				nulls[column][row >>> 6] |= 1L << row;
+			} else {
+				set(row, column, value);
+			}
+		}
+		rowCount++;
+	}
+	
+	public boolean isNull(int row, int column) {
+		return (nulls[column][row >>> 6] & (1L << row)) != 0;
+	}
+	
+	private void set(int row, int column, CharSequence value) {
+		switch (types[column]) {
+		case BOOLEAN:
+			longs[column][row] = TypeInference.isBoolean(value) && Character.toLowerCase(value.charAt(0)) == 't' ? 1 : 0;
+			break;
+		case INTEGER:
+			longs[column][row] = parseLong(value);
+			break;
+		case FLOATING:
+			doubles[column][row] = parseDouble(value);
+			break;
+		case DATE:
+			longs[column][row] = parseDate(value);
+			break;
+		case TIME:
+			longs[column][row] = parseTime(value);
+			break;
+		case DATETIME:
+			longs[column][row] = parseDateTime(value);
+			break;
+		default:
+			textStart[column][row] = textLength;
+			if (value instanceof Utf8Slice)
+				appendBytes((Utf8Slice) value);
+			else
+				appendUtf8(value);
+			textEnd[column][row] = textLength;
+		}
+	}
+	
+	private static boolean isBlank(CharSequence value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (!Character.isWhitespace(value.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+	
+	static long parseLong(CharSequence value) {
+		if (!TypeInference.isInteger(value))
+			throw invalid(ColumnType.INTEGER, value);
+		int i = 0;
+		boolean negative = value.charAt(0) == '-';
+		if (negative || value.charAt(0) == '+')
+			i++;
+		long result = 0;
+		for (; i < value.length(); i++) {
+			result = result * 10 - (value.charAt(i) - '0');
+		}
+		return negative ? result : -result;
+	}
+	
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	/**
+	 * Exact fast path for decimals with at most 15 significant digits and a small exponent,
+	 * other values fall back to {@link Double#parseDouble(String)}.
+	 */
+	static double parseDouble(CharSequence value) {
+		if (!TypeInference.isFloating(value))
+			throw invalid(ColumnType.FLOATING, value);
+		int length = value.length();
+		int i = 0;
+		boolean negative = value.charAt(0) == '-';
+		if (negative || value.charAt(0) == '+')
+			i++;
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c == '.') {
+				fraction = true;
+				continue;
+			}
+			if (c < '0' || c > '9')
+				break;
+			if (mantissa != 0 || c != '0')
+				digits++;
+			mantissa = mantissa * 10 + (c - '0');
+			if (fraction)
+				scale--;
+			if (digits > 15)
+				return Double.parseDouble(value.toString());
+		}
+		if (i < length) {
+			//exponent
+			i++;
+			boolean negativeExponent = value.charAt(i) == '-';
+			if (negativeExponent || value.charAt(i) == '+')
+				i++;
+			int exponent = 0;
+			for (; i < length && exponent < 1000; i++)
+				exponent = exponent * 10 + (value.charAt(i) - '0');
+			scale += negativeExponent ? -exponent : exponent;
+		}
+		if (scale < -22 || scale > 22)
+			return Double.parseDouble(value.toString());
+		double result = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+		return negative ? -result : result;
+	}
+	
+	static long parseDate(CharSequence value) {
+		if (!TypeInference.isDate(value))
+			throw invalid(ColumnType.DATE, value);
+		return parseDate(value, value.length());
+	}
+	
+	/**
+	 * Parses {@code yyyy-[m]m-[d]d} ending at the given index. Day overflow rolls over
+	 * like {@link java.sql.Date#valueOf(String)}.
+	 */
+	private static long parseDate(CharSequence value, int end) {
+		int year = digits(value, 0, 4);
+		int secondDash = 5;
+		while (value.charAt(secondDash) != '-')
+			secondDash++;
+		int month = digits(value, 5, secondDash);
+		int day = digits(value, secondDash + 1, end);
+		return epochDay(year, month, 1) + day - 1;
+	}
+	
+	static long parseTime(CharSequence value) {
+		if (!TypeInference.isTime(value))
+			throw invalid(ColumnType.TIME, value);
+		return parseTime(value, 0);
+	}
+	
+	/**
+	 * @return seconds of the day of the {@code hh:mm:ss} time starting at the given index
+	 */
+	private static long parseTime(CharSequence value, int start) {
+		int firstColon = start;
+		while (value.charAt(firstColon) != ':')
+			firstColon++;
+		return digits(value, start, firstColon) * 3600L + digits(value, firstColon + 1, firstColon + 3) * 60L
+				+ digits(value, firstColon + 4, firstColon + 6);
+	}
+	
+	static long parseDateTime(CharSequence value) {
+		if (!TypeInference.isDateTime(value))
+			throw invalid(ColumnType.DATETIME, value);
+		int space = 0;
+		while (value.charAt(space) != ' ')
+			space++;
+		int dot = space;
+		while (dot < value.length() && value.charAt(dot) != '.')
+			dot++;
+		//the fraction is truncated to microseconds, the precision of the database timestamp
+		long seconds = parseDate(value, space) * SECONDS_PER_DAY + parseTime(value, space + 1);
+		long micros = 0;
+		for (int i = dot + 1, scale = 100_000; i < value.length() && scale > 0; i++, scale /= 10) {
+			micros += (value.charAt(i) - '0') * scale;
+		}
+		return seconds * MICROS_PER_SECOND + micros;
+	}
+	
+	private static int digits(CharSequence value, int start, int end) {
+		int result = 0;
+		for (int i = start; i < end; i++)
+			result = result * 10 + (value.charAt(i) - '0');
+		return result;
+	}
+	
+	private static IllegalArgumentException invalid(ColumnType type, CharSequence value) {
+		return new IllegalArgumentException("invalid " + type.name().toLowerCase() + " value: " + value);
+	}
+	
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date.
+	 */
+	static long epochDay(long year, int month, int day) {
+		year -= month <= 2 ? 1 : 0;
+		long era = Math.floorDiv(year, 400);
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+	
+	/**
+	 * @return {year, month, day} of the given epoch day
+	 */
+	static int[] civilDate(long epochDay, int[] result) {
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		result[0] = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+		result[1] = month;
+		result[2] = day;
+		return result;
+	}
+	
+	private void appendBytes(Utf8Slice value) {
+		int length = value.length();
+		if (textLength + length > text.length)
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+		value.copyTo(text, textLength);
+		textLength += length;
+	}
+	
+	private void appendUtf8(CharSequence value) {
+		int length = value.length();
+		if (textLength + length * 3 > text.length)
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length * 3));
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				text[textLength++] = (byte) c;
+			} else if (c < 0x800) {
+				text[textLength++] = (byte) (0xc0 | (c >> 6));
+				text[textLength++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				text[textLength++] = (byte) (0xf0 | (codePoint >> 18));
+				text[textLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				text[textLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				text[textLength++] = (byte) (0x80 | (codePoint & 0x3f));
+			} else {
+				if (Character.isSurrogate(c))
+					c = '?';
+				text[textLength++] = (byte) (0xe0 | (c >> 12));
+				text[textLength++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				text[textLength++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Streams rows into a PostgreSQL table using {@code COPY ... FROM STDIN} in the text format.
+ * Values are encoded straight from the column arrays of the batch.
+ * The connection is obtained through {@link DataSourceUtils}, so the copy joins the current transaction.
+ */
+class CopyRowWriter implements RowWriter {
+	
+	private static final byte[] NULL = {'\\', 'N'};
+	private static final int FLUSH_SIZE = 1 << 20;
+	private static final long MICROS_PER_DAY = 86_400_000_000L;
+	
+	private final DataSource dataSource;
+	private final Connection connection;
+	private final CopyIn copyIn;
+	private final ColumnType[] types;
+	
+	private byte[] buffer = new byte[1 << 16];
+	private int length;
+	private final int[] date = new int[3];
+	
+	CopyRowWriter(DataSource dataSource, String tableName, DataInfo dataInfo) throws SQLException {
+		this.dataSource = dataSource;
+		this.types = dataInfo.columns.stream().map(c -> c.type).toArray(ColumnType[]::new);
+		String copy = "COPY " + tableName + " ("
+				+ dataInfo.columns.stream().map(c -> c.name).collect(Collectors.joining(", "))
+				+ ") FROM STDIN";
+		connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copy);
+		} catch (SQLException e) {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return true when rows can be loaded with {@code COPY} into the given datasource
+	 */
+	static boolean isSupported(DataSource dataSource) {
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			return connection.isWrapperFor(PGConnection.class);
+		} catch (SQLException e) {
+			return false;
+		} finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+	}
+	
+	@Override
+	public void write(ColumnBatch batch) throws SQLException {
+		for (int row = 0; row < batch.size(); row++) {
+			for (int column = 0; column < types.length; column++) {
+				if (column > 0)
+					append((byte) '\t');
+				if (batch.isNull(row, column))
+					append(NULL);
+				else
+					encode(batch, row, column);
+			}
+			append((byte) '\n');
+			if (length > FLUSH_SIZE)
+				flush();
+		}
+		flush();
+	}
+	
+	private void flush() throws SQLException {
+		copyIn.writeToCopy(buffer, 0, length);
+		length = 0;
+	}
+	
+	private void encode(ColumnBatch batch, int row, int column) {
+		switch (types[column]) {
+		case BOOLEAN:
+			append((byte) (batch.longs[column][row] != 0 ? 't' : 'f'));
+			break;
+		case INTEGER:
+			appendLong(batch.longs[column][row]);
+			break;
+		case FLOATING:
+			appendAscii(Double.toString(batch.doubles[column][row]));
+			break;
+		case DATE:
+			appendDate(batch.longs[column][row]);
+			break;
+		case TIME:
+			appendTime(batch.longs[column][row]);
+			break;
+		case DATETIME:
+			long micros = batch.longs[column][row];
+			appendDate(Math.floorDiv(micros, MICROS_PER_DAY));
+			append((byte) ' ');
+			long microOfDay = Math.floorMod(micros, MICROS_PER_DAY);
+			appendTime(microOfDay / 1_000_000);
+			if (microOfDay % 1_000_000 != 0) {
+				append((byte) '.');
+				appendDigits(microOfDay % 1_000_000, 6);
+			}
+			break;
+		default:
+			appendText(batch.text, batch.textStart[column][row], batch.textEnd[column][row]);
+		}
+	}
+	
+	private void appendDate(long epochDay) {
+		ColumnBatch.civilDate(epochDay, date);
+		if (date[0] < 0 || date[0] > 9999) {
+			//outside the four digit range the year is written as is, BC years are not expected here
+			appendLong(date[0]);
+		} else {
+			appendDigits(date[0], 4);
+		}
+		append((byte) '-');
+		appendDigits(date[1], 2);
+		append((byte) '-');
+		appendDigits(date[2], 2);
+	}
+	
+	private void appendTime(long secondOfDay) {
+		appendDigits(secondOfDay / 3600, 2);
+		append((byte) ':');
+		appendDigits(secondOfDay / 60 % 60, 2);
+		append((byte) ':');
+		appendDigits(secondOfDay % 60, 2);
+	}
+	
+	private void appendDigits(long value, int width) {
+		ensureCapacity(width);
+		for (int i = width - 1; i >= 0; i--) {
+			buffer[length + i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		length += width;
+	}
+	
+	private void appendLong(long value) {
+		ensureCapacity(20);
+		if (value < 0) {
+			buffer[length++] = '-';
+		} else {
+			value = -value;
+		}
+		//digits of the negated value, which also covers Long.MIN_VALUE
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10)
+			digits++;
+		for (int i = digits - 1; i >= 0; i--) {
+			buffer[length + i] = (byte) ('0' - value % 10);
+			value /= 10;
+		}
+		length += digits;
+	}
+	
+	private void appendAscii(String value) {
+		ensureCapacity(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			buffer[length++] = (byte) value.charAt(i);
+		}
+	}
+	
+	private void appendText(byte[] text, int start, int end) {
+		ensureCapacity((end - start) * 2);
+		for (int i = start; i < end; i++) {
+			byte b = text[i];
+			switch (b) {
+			case '\\':
+				buffer[length++] = '\\';
+				buffer[length++] = '\\';
+				break;
+			case '\t':
+				buffer[length++] = '\\';
+				buffer[length++] = 't';
+				break;
+			case '\n':
+				buffer[length++] = '\\';
+				buffer[length++] = 'n';
+				break;
+			case '\r':
+				buffer[length++] = '\\';
+				buffer[length++] = 'r';
+				break;
+			default:
+				buffer[length++] = b;
+			}
+		}
+	}
+	
+	private void append(byte b) {
+		ensureCapacity(1);
+		buffer[length++] = b;
+	}
+	
+	private void append(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+	
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+		}
+	}
+	
+	@Override
+	public void finish() throws SQLException {
+		copyIn.endCopy();
+	}
+	
+	@Override
+	public void close() throws SQLException {
+		try {
+			if (copyIn.isActive())
+				copyIn.cancelCopy();
+		} finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+	}
+}
@@ -45,6 +45,9 @@ public class DataInfo {
 	public final String fileUrl;
 	public String fileName;
 	public String fileSize;
+	public String contentType;
+	public long fileBytes = -1;
+	public FileVariant variant;
 	public List<ColumnInfo> columns = new ArrayList<>();
 	
 	public volatile long datasetId;
@@ -86,21 +89,26 @@ public class DataInfo {
 		TEXT
 	}
 	
+	public enum FileVariant {
+		INGESTED,
+		ORIGINAL
+	}
+	
 	public enum Status {
 		READY,
 		IN_PROGRESS,
 		COMPLETE,
-		ERROR
+		ERROR,
+		CANCELLED
 	}
 	
 	public static Map<ColumnType, ValueParser<?>> VALUE_PARSERS = Stream.of(
-			new ValueParser<>(ColumnType.BOOLEAN, Boolean::valueOf,
-					v -> "true".equalsIgnoreCase(v) || "false".equalsIgnoreCase(v)),
-			new ValueParser<>(ColumnType.INTEGER, Integer::valueOf),
-			new ValueParser<>(ColumnType.FLOATING, Double::valueOf),
-			new ValueParser<>(ColumnType.DATE, Date::valueOf),
-			new ValueParser<>(ColumnType.TIME, Time::valueOf),
-			new ValueParser<>(ColumnType.DATETIME, Timestamp::valueOf),
+			new ValueParser<>(ColumnType.BOOLEAN, Boolean::valueOf, TypeInference::isBoolean),
+			new ValueParser<>(ColumnType.INTEGER, Long::valueOf, TypeInference::isInteger),
+			new ValueParser<>(ColumnType.FLOATING, Double::valueOf, TypeInference::isFloating),
+			new ValueParser<>(ColumnType.DATE, Date::valueOf, TypeInference::isDate),
+			new ValueParser<>(ColumnType.TIME, Time::valueOf, TypeInference::isTime),
+			new ValueParser<>(ColumnType.DATETIME, Timestamp::valueOf, TypeInference::isDateTime),
 			new ValueParser<>(ColumnType.TEXT, String::valueOf))
 			.collect(Collectors.toMap(p -> p.columnType, p -> p, (u, v) -> u, LinkedHashMap::new));
 	
@@ -25,19 +25,10 @@ package eu.sshoc.dataversesuperset;
 
 import eu.sshoc.dataversesuperset.readers.Reader;
 import org.apache.commons.io.FileUtils;
-import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
-import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -46,55 +37,64 @@ import java.util.List;
 @Component
 public class DataLoader {
 	
+	private static final int SAMPLE_ROWS = 500;
+	
 	@Autowired
 	private Logger logger;
 	
-	private final CloseableHttpClient httpClient;
-	
-	public DataLoader() {
-		httpClient = HttpClients.createDefault();
-	}
+	@Autowired
+	private SpoolCache spoolCache;
+	@Autowired
+	private Dataverse dataverse;
+	@Autowired
+	private FileSampler fileSampler;
 	
 	public void loadMetadata(DataInfo dataInfo) throws IOException {
-		HttpGet httpGet = new HttpGet(dataInfo.fileUrl);
-		try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-			int statusCode = response.getStatusLine().getStatusCode();
-			HttpEntity entity = response.getEntity();
-			if (statusCode != HttpStatus.OK.value() || entity == null || entity.getContentType() == null) {
-				logger.error("{}: status code {}", dataInfo.fileUrl, statusCode);
-				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file not found");
+		dataverse.selectVariant(dataInfo);
+		if (dataInfo.variant == DataInfo.FileVariant.INGESTED && dataInfo.fileName != null) {
+			List<DataInfo.ColumnInfo> columns = dataverse.findColumns(dataInfo);
+			if (!columns.isEmpty()) {
+				//Dataverse knows the variables, no need to download and sample the file
+				dataInfo.columns.addAll(columns);
+				return;
 			}
-			String fileName = "unknown-file.tab";
-			for (HeaderElement element : response.getFirstHeader("Content-Disposition").getElements()) {
-				NameValuePair param = element.getParameterByName("filename");
-				if (param != null)
-					fileName = param.getValue();
+		}
+		
+		if (!spoolCache.contains(dataInfo.fileUrl)) {
+			//the file is only downloaded for the import, a prefix is enough for delimited formats
+			FileSampler.Sample sample = fileSampler.sample(dataInfo.fileUrl, SAMPLE_ROWS);
+			if (sample != null) {
+				dataInfo.fileName = sample.fileName;
+				dataInfo.contentType = sample.contentType;
+				dataInfo.fileBytes = sample.fileSize;
+				dataInfo.fileSize = sample.fileSize < 0 ? "size unknown" : FileUtils.byteCountToDisplaySize(sample.fileSize);
+				readColumns(dataInfo, sample.getEntity());
+				return;
+			}
+		}
+		
+		//spreadsheets can't be read from a prefix
+		try (SpoolCache.Entry file = spoolCache.open(dataInfo.fileUrl)) {
+			dataInfo.fileName = file.getFileName();
+			dataInfo.contentType = file.getContentType();
+			dataInfo.fileBytes = file.getSize();
+			dataInfo.fileSize = FileUtils.byteCountToDisplaySize(file.getSize());
+			readColumns(dataInfo, file.getEntity());
+		}
+	}
+	
+	private void readColumns(DataInfo dataInfo, HttpEntity entity) throws IOException {
+		try (Reader reader = Reader.createReader(dataInfo, entity)) {
+			List<List<String>> rows = new ArrayList<>();
+			int rowLimit = SAMPLE_ROWS;
+			while (reader.hasNext() && rowLimit-- > 0) {
+				rows.add(reader.next());
 			}
-			dataInfo.fileName = fileName;
-			dataInfo.fileSize = FileUtils.byteCountToDisplaySize(entity.getContentLength());
 			
-			try(Reader reader = Reader.createReader(dataInfo, response.getEntity())) {
-				List<List<String>> rows = new ArrayList<>();
-				int rowLimit = 500;
-				while (reader.hasNext() && rowLimit-- > 0) {
-					rows.add(reader.next());
-				}
-				
-				List<String> columns = reader.getColumns();
-				for (int i = 0; i < columns.size(); i++) {
-					final int columnI = i;
-					DataInfo.ColumnType columnType = DataInfo.ColumnType.TEXT;
-					for (DataInfo.ValueParser<?> valParser : DataInfo.VALUE_PARSERS.values()) {
-						boolean allMatch = rows.stream()
-								.map(r -> r.get(columnI))
-								.allMatch(v -> !StringUtils.hasLength(v) || valParser.matches(v));
-						if (allMatch) {
-							columnType = valParser.columnType;
-							break;
-						}
-					}
-					dataInfo.columns.add(new DataInfo.ColumnInfo(columns.get(i), columnType));
-				}
+			List<String> columns = reader.getColumns();
+			List<DataInfo.ColumnType> types = TypeInference.inferTypes(rows, columns.size());
+			for (int i = 0; i < columns.size(); i++) {
+				dataInfo.columns.add(new DataInfo.ColumnInfo(columns.get(i), types.get(i)));
 			}
 		}
 	}
@@ -23,24 +23,29 @@
  */
 package eu.sshoc.dataversesuperset;
 
+import eu.sshoc.dataversesuperset.DataInfo.ColumnInfo;
 import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import eu.sshoc.dataversesuperset.readers.DelimitedReader;
 import eu.sshoc.dataversesuperset.readers.Reader;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
 
 @Component
@@ -61,63 +66,298 @@ public class DataSaver {
 	@Autowired
 	JdbcTemplate jdbcTemplate;
 	@Autowired
+	TransactionTemplate transactionTemplate;
+	@Autowired
+	Map<String, String> importConfig;
+	@Autowired
+	ImportPipeline importPipeline;
+	@Autowired
+	SpoolCache spoolCache;
+	@Autowired
+	ImportCatalog importCatalog;
+	@Autowired
+	ImportCheckpoints importCheckpoints;
+	@Autowired
 	DataLoader dataLoader;
 	@Autowired
 	Superset superset;
 	
-	@Transactional
-	public String createTable(DataInfo dataInfo) throws IOException {
+	/**
+	 * Loads the file into a staging table, indexes and analyzes it and then swaps it with the live table
+	 * in a short transaction, so charts keep working on the previous data during a re-import.
+	 * On PostgreSQL the staging table of an import without checkpoints can be loaded {@code UNLOGGED}
+	 * and made logged before the swap, which is opt-in with {@code custom.import.unlogged}. A cancellation is checked between batches and steps, it drops the staging table or rolls back the append.
+	 * @return true when this import created the table, false when an existing table was replaced, appended to or kept
+	 */
+	public boolean createTable(DataInfo dataInfo, ImportCancellation cancellation) throws IOException {
 		String tableName = dataInfo.getName();
-		deleteTable(tableName);
-		String createTable = "CREATE TABLE " + tableName + " ("
-				+ dataInfo.columns.stream().map(c -> c.name + " " + DB_TYPES.get(c.type))
-						.collect(Collectors.joining(", "))
-				+ ")";
-		jdbcTemplate.execute(createTable);
+		ImportCatalog.Entry imported = importCatalog.find(tableName);
+		SpoolCache.Entry file = imported == null ? spoolCache.open(dataInfo.fileUrl, null, null, cancellation)
+				: spoolCache.open(dataInfo.fileUrl, imported.etag, imported.lastModified, cancellation);
+		if (file == null || (imported != null && imported.matches(file))) {
+			logger.info("{}: file not changed since the last import", tableName);
+			if (file != null)
+				file.close();
+			return false;
+		}
 		
-		String insertValues = "INSERT INTO " + tableName + " VALUES ("
-				+ dataInfo.columns.stream().map(c -> "?").collect(Collectors.joining(", "))
-				+ ")";
-
-		List<Object[]> rows = new ArrayList<>();
-		try (CloseableHttpResponse response = openFile(dataInfo); Reader reader = Reader.createReader(dataInfo, response.getEntity())) {
-			int columnCount = dataInfo.columns.size();
-			int batchLimit = 9000;
-			while (reader.hasNext()) {
-				List<String> record = reader.next();
-				Object[] row = new Object[columnCount];
-				for (int i = 0; i < columnCount; i++) {
-					DataInfo.ColumnType type = dataInfo.columns.get(i).type;
-					row[i] = DataInfo.VALUE_PARSERS.get(type).parse(record.get(i));
+		try (file) {
+			if (imported != null && append(dataInfo, tableName, file, imported, cancellation))
+				return false;
+			return load(dataInfo, tableName, file, cancellation);
+		}
+	}
+	
+	/**
+	 * Appends the new rows of a file which only grew since the last import. The file qualifies when the
+	 * previously imported bytes are unchanged, as shown by their digest, and end with a line break.
+	 * @return false when the whole file has to be imported again
+	 */
+	private boolean append(DataInfo dataInfo, String tableName, SpoolCache.Entry file, ImportCatalog.Entry imported,
+			ImportCancellation cancellation) throws IOException {
+		if (!Boolean.parseBoolean(importConfig.getOrDefault("incremental", "true"))
+				|| imported.sha256 == null || imported.size == 0 || file.getSize() <= imported.size)
+			return false;
+		try (Reader reader = Reader.createReader(dataInfo, file.getEntity())) {
+			if (!(reader instanceof DelimitedReader) || !endsWithLineBreak(file.getFile(), imported.size)
+					|| !imported.sha256.equals(SpoolCache.sha256(file.getFile(), imported.size)))
+				return false;
+			long rowCount = transactionTemplate.execute(status -> {
+				try (RowWriter writer = createWriter(tableName, dataInfo, cancellation)) {
+					long rows = importPipeline.runFrom((DelimitedReader) reader, imported.size,
+							dataInfo.columns.stream().map(c -> c.type).toArray(ColumnType[]::new), writer);
+					writer.finish();
+					importCatalog.record(tableName, dataInfo.fileUrl, file, imported.rowCount + rows);
+					return rows;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} catch (SQLException e) {
+					throw jdbcTemplate.getExceptionTranslator().translate("append " + tableName, null, e);
 				}
-				rows.add(row);
-				if (rows.size() % batchLimit == 0 || !reader.hasNext()) {
-					jdbcTemplate.batchUpdate(insertValues, rows);
-					rows.clear();
+			});
+			logger.info("{}: appended {} rows", tableName, rowCount);
+			return true;
+		} catch (CancellationException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			//also values of the new rows not fitting the column types inferred from the imported ones
+			logger.warn("{}: append failed, importing the whole file", tableName, e);
+			return false;
+		}
+	}
+	
+	private static boolean endsWithLineBreak(Path file, long length) throws IOException {
+		try (FileChannel channel = FileChannel.open(file)) {
+			ByteBuffer last = ByteBuffer.allocate(1);
+			return channel.read(last, length - 1) == 1 && last.get(0) == '\n';
+		}
+	}
+	
+	/**
+	 * Large delimited files are loaded in chunks, each committed together with a checkpoint of its end position.
+	 * The staging table and the checkpoint are kept on failures, so a repeated import of the same file version
+	 * continues after the last committed chunk.
+	 * @return true when there was no table to replace
+	 */
+	private boolean load(DataInfo dataInfo, String tableName, SpoolCache.Entry file, ImportCancellation cancellation)
+			throws IOException {
+		String stagingName = tableName + "_staging";
+		boolean postgres = CopyRowWriter.isSupported(jdbcTemplate.getDataSource());
+		
+		try (Reader reader = Reader.createReader(dataInfo, file.getEntity())) {
+			long chunkSize = DataSize.parse(importConfig.getOrDefault("checkpoint-size", "1GB")).toBytes();
+			boolean checkpointed = chunkSize > 0 && reader instanceof DelimitedReader && file.getSha256() != null
+					&& ((DelimitedReader) reader).getDataSize() > chunkSize;
+			//an unlogged table is emptied by a database crash, which would not match the checkpoint
+			boolean unlogged = !checkpointed && postgres && Boolean.parseBoolean(importConfig.getOrDefault("unlogged", "false"));
+			ImportCheckpoints.Checkpoint checkpoint = checkpointed ? findCheckpoint(tableName, stagingName, file) : null;
+			
+			if (checkpoint == null) {
+				importCheckpoints.delete(tableName);
+				deleteTable(stagingName);
+				String createTable = "CREATE " + (unlogged ? "UNLOGGED " : "") + "TABLE " + stagingName + " ("
+						+ dataInfo.columns.stream().map(c -> c.name + " " + DB_TYPES.get(c.type))
+								.collect(Collectors.joining(", "))
+						+ ")";
+				jdbcTemplate.execute(createTable);
+			}
+			
+			try {
+				long rowCount;
+				if (checkpointed) {
+					rowCount = loadChunks((DelimitedReader) reader, dataInfo, tableName, stagingName, file.getSha256(),
+							checkpoint, chunkSize, cancellation);
+				} else {
+					try (RowWriter writer = createWriter(stagingName, dataInfo, cancellation)) {
+						rowCount = importPipeline.run(reader,
+								dataInfo.columns.stream().map(c -> c.type).toArray(ColumnType[]::new), writer);
+						writer.finish();
+					} catch (SQLException e) {
+						throw jdbcTemplate.getExceptionTranslator().translate("import " + tableName, null, e);
+					}
 				}
+				logger.info("{}: imported {} rows", tableName, rowCount);
+				
+				cancellation.check();
+				List<String> indexes = createIndexes(stagingName, dataInfo, postgres);
+				if (postgres)
+					jdbcTemplate.execute("ANALYZE " + stagingName);
+				cancellation.check();
+				if (unlogged)
+					jdbcTemplate.execute("ALTER TABLE " + stagingName + " SET LOGGED");
+				cancellation.check();
+				return swap(stagingName, tableName, indexes, postgres, () -> {
+					importCatalog.record(tableName, dataInfo.fileUrl, file, rowCount);
+					if (checkpointed)
+						importCheckpoints.delete(tableName);
+				});
+			} catch (CancellationException e) {
+				deleteTable(stagingName);
+				importCheckpoints.delete(tableName);
+				throw e;
+			} catch (IOException | RuntimeException e) {
+				if (!checkpointed)
+					deleteTable(stagingName);
+				throw e;
 			}
 		}
-
-		return tableName;
 	}
-
-	protected CloseableHttpResponse openFile(DataInfo dataInfo) throws IOException {
-		HttpGet httpGet = new HttpGet(dataInfo.fileUrl);
-		CloseableHttpResponse response = HttpClients.createDefault().execute(httpGet);
+	
+	/**
+	 * @return the checkpoint of an interrupted import of the same file version, or null
+	 */
+	private ImportCheckpoints.Checkpoint findCheckpoint(String tableName, String stagingName, SpoolCache.Entry file) {
+		ImportCheckpoints.Checkpoint checkpoint = importCheckpoints.find(tableName);
+		if (checkpoint == null || !checkpoint.sha256.equals(file.getSha256()))
+			return null;
+		return tableExists(stagingName) ? checkpoint : null;
+	}
+	
+	private boolean tableExists(String tableName) {
+		Integer tables = jdbcTemplate.queryForObject(
+				"SELECT count(*) FROM information_schema.tables WHERE table_name = ?", Integer.class, tableName);
+		return tables != null && tables > 0;
+	}
+	
+	/**
+	 * Loads the rows after the checkpoint chunk by chunk, each chunk in its own transaction.
+	 * @return number of rows in the staging table
+	 */
+	private long loadChunks(DelimitedReader reader, DataInfo dataInfo, String tableName, String stagingName,
+			String sha256, ImportCheckpoints.Checkpoint checkpoint, long chunkSize, ImportCancellation cancellation)
+			throws IOException {
+		ColumnType[] types = dataInfo.columns.stream().map(c -> c.type).toArray(ColumnType[]::new);
+		long rowCount = checkpoint == null ? 0 : checkpoint.rowCount;
+		long[] chunks = importPipeline.split(reader, checkpoint == null ? reader.getDataStart() : checkpoint.position,
+				chunkSize);
+		if (checkpoint != null)
+			logger.info("{}: resuming the import after {} rows", tableName, rowCount);
 		try {
-			int statusCode = response.getStatusLine().getStatusCode();
-			HttpEntity entity = response.getEntity();
-			if (statusCode != HttpStatus.OK.value() || entity == null || entity.getContentType() == null) {
-				logger.error("{}: status code {}", dataInfo.fileUrl, statusCode);
-				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file not found");
+			for (int i = 0; i + 1 < chunks.length; i++) {
+				long start = chunks[i];
+				long end = chunks[i + 1];
+				long committed = rowCount;
+				rowCount += transactionTemplate.execute(status -> {
+					try (RowWriter writer = createWriter(stagingName, dataInfo, cancellation)) {
+						long rows = importPipeline.runRange(reader, start, end, types, writer);
+						writer.finish();
+						importCheckpoints.save(tableName, sha256, end, committed + rows);
+						return rows;
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					} catch (SQLException e) {
+						throw jdbcTemplate.getExceptionTranslator().translate("import " + tableName, null, e);
+					}
+				});
+				logger.debug("{}: committed {} rows up to position {}", tableName, rowCount, end);
 			}
-			return response;
-		} catch (ResponseStatusException e) {
-			response.close();
-			throw e;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return rowCount;
+	}
+	
+	/**
+	 * Indexes date and timestamp columns with BRIN indexes once the rows are loaded, which is faster than
+	 * maintaining them row by row. They are small and fit data appended in time order.
+	 * @return names of the created indexes
+	 */
+	private List<String> createIndexes(String stagingName, DataInfo dataInfo, boolean postgres) {
+		List<String> indexes = new ArrayList<>();
+		if (!postgres || !Boolean.parseBoolean(importConfig.getOrDefault("brin-indexes", "true")))
+			return indexes;
+		for (int i = 0; i < dataInfo.columns.size(); i++) {
+			ColumnInfo column = dataInfo.columns.get(i);
+			if (column.type == ColumnType.DATE || column.type == ColumnType.DATETIME) {
+				String index = stagingName + "_brin_" + i;
+				jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + index + " ON " + stagingName + " USING brin (" + column.name + ")");
+				indexes.add(index);
+			}
+		}
+		return indexes;
+	}
+	
+	/**
+	 * @return true when there was no table to replace
+	 */
+	private boolean swap(String stagingName, String tableName, List<String> indexes, boolean postgres, Runnable onSwap) {
+		return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+			if (postgres) {
+				jdbcTemplate.execute("SET LOCAL lock_timeout = '"
+						+ DurationStyle.detectAndParse(importConfig.getOrDefault("swap-lock-timeout", "30s")).toMillis() + "ms'");
+			}
+			boolean created = !tableExists(tableName);
+			deleteTable(tableName);
+			jdbcTemplate.execute("ALTER TABLE " + stagingName + " RENAME TO " + tableName);
+			//free the staging index names for the next import
+			for (String index : indexes) {
+				jdbcTemplate.execute("ALTER INDEX " + index + " RENAME TO "
+						+ tableName + index.substring(stagingName.length()));
+			}
+			onSwap.run();
+			return created;
+		}));
+	}
+	
+	private RowWriter createWriter(String tableName, DataInfo dataInfo, ImportCancellation cancellation)
+			throws SQLException {
+		DataSource dataSource = jdbcTemplate.getDataSource();
+		RowWriter writer;
+		if (Boolean.parseBoolean(importConfig.getOrDefault("copy", "true")) && CopyRowWriter.isSupported(dataSource)) {
+			writer = new CopyRowWriter(dataSource, tableName, dataInfo);
+		} else {
+			logger.debug("{}: using batched inserts", tableName);
+			writer = new InsertRowWriter(jdbcTemplate, tableName, dataInfo);
 		}
+		//the pipeline stops and cleans up on the exception of a cancelled writer
+		return new RowWriter() {
+			@Override
+			public void write(ColumnBatch batch) throws SQLException {
+				cancellation.check();
+				writer.write(batch);
+			}
+			
+			@Override
+			public void finish() throws SQLException {
+				cancellation.check();
+				writer.finish();
+			}
+			
+			@Override
+			public void close() throws SQLException {
+				writer.close();
+			}
+		};
 	}
 
+	/**
+	 * Drops the staging table and the checkpoint kept to resume an import, when it is not going to be resumed.
+	 */
+	public void deleteCheckpoint(String tableName) {
+		deleteTable(tableName + "_staging");
+		importCheckpoints.delete(tableName);
+	}
+	
 	public void deleteTable(String tableName) {
 		jdbcTemplate.execute("DROP TABLE IF EXISTS " + tableName);
 	}
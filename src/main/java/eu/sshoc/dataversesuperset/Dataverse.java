@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnInfo;
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import eu.sshoc.dataversesuperset.DataInfo.FileVariant;
+import eu.sshoc.dataversesuperset.readers.Reader;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dataverse native API calls.
+ */
+@Component
+public class Dataverse {
+	
+	private static final String INGESTED_CONTENT_TYPE = "text/tab-separated-values";
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+	
+	static {
+		//metadata comes from remote sites, no DTDs or external entities are resolved
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	@Autowired
+	private Logger logger;
+	
+	@Autowired
+	private CloseableHttpClient httpClient;
+	
+	/**
+	 * Chooses the representation of the file to download. Tabular files ingested by Dataverse are served
+	 * by default in the tab separated form with a header row, which is cheaper to read than the original
+	 * spreadsheet, so the original is only used for files without an ingested version or without
+	 * available metadata. Files in formats that cannot be read are rejected before the download.
+	 */
+	public void selectVariant(DataInfo dataInfo) {
+		dataInfo.variant = FileVariant.ORIGINAL;
+		if (dataInfo.siteUrl == null || dataInfo.fileId == null)
+			return;
+		JSONObject dataFile = findDataFile(dataInfo.siteUrl, dataInfo.fileId);
+		if (dataFile == null)
+			return;
+		String contentType = dataFile.optString("contentType");
+		dataInfo.contentType = contentType.isEmpty() ? null : contentType;
+		dataInfo.fileBytes = dataFile.optLong("filesize", -1);
+		if (contentType.startsWith(INGESTED_CONTENT_TYPE) && dataFile.has("originalFileFormat")) {
+			dataInfo.variant = FileVariant.INGESTED;
+			dataInfo.fileName = dataFile.optString("filename", null);
+			if (dataFile.has("filesize"))
+				dataInfo.fileSize = FileUtils.byteCountToDisplaySize(dataFile.getLong("filesize"));
+		} else if (!contentType.isEmpty() && !Reader.isSupported(contentType, dataFile.optString("filename"))) {
+			logger.warn("{}: content type {} not supported", dataInfo.fileUrl, contentType);
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "file not valid");
+		}
+	}
+	
+	/**
+	 * Reads the columns of an ingested file from its DDI variable descriptions: character variables
+	 * are text unless their format is a date or time, discrete numeric variables are integers
+	 * and continuous ones floating point numbers.
+	 * @return columns in the file order, empty when the metadata is not available
+	 */
+	public List<ColumnInfo> findColumns(DataInfo dataInfo) {
+		HttpGet get = new HttpGet(dataInfo.siteUrl + "/api/access/datafile/" + dataInfo.fileId + "/metadata/ddi");
+		try (CloseableHttpResponse response = httpClient.execute(get)) {
+			if (response.getStatusLine().getStatusCode() != HttpStatus.OK.value()) {
+				logger.info("{}: no variable metadata, status {}", get.getURI(), response.getStatusLine().getStatusCode());
+				EntityUtils.consume(response.getEntity());
+				return List.of();
+			}
+			try (InputStream content = response.getEntity().getContent()) {
+				return readVariables(content);
+			}
+		} catch (IOException | XMLStreamException e) {
+			logger.warn("{}: could not read variable metadata: {}", get.getURI(), e.getMessage());
+			return List.of();
+		}
+	}
+	
+	private static List<ColumnInfo> readVariables(InputStream content) throws XMLStreamException {
+		XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(content);
+		List<ColumnInfo> columns = new ArrayList<>();
+		String name = null;
+		String interval = null;
+		ColumnType type = null;
+		try {
+			while (xml.hasNext()) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("var")) {
+					name = xml.getAttributeValue(null, "name");
+					interval = xml.getAttributeValue(null, "intrvl");
+					type = null;
+				} else if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("varFormat") && name != null) {
+					type = columnType(xml.getAttributeValue(null, "type"), interval,
+							xml.getAttributeValue(null, "category"), xml.getAttributeValue(null, "formatname"));
+				} else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("var") && name != null) {
+					columns.add(new ColumnInfo(name, type != null ? type : ColumnType.TEXT));
+					name = null;
+				}
+			}
+		} finally {
+			xml.close();
+		}
+		return columns;
+	}
+	
+	private static ColumnType columnType(String varType, String interval, String category, String formatName) {
+		if ("numeric".equals(varType))
+			return "contin".equals(interval) ? ColumnType.FLOATING : ColumnType.INTEGER;
+		if (formatName == null || !("date".equals(category) || "time".equals(category)))
+			return ColumnType.TEXT;
+		boolean date = formatName.contains("y");
+		boolean time = formatName.contains("H");
+		if (date && time)
+			return ColumnType.DATETIME;
+		if (date)
+			return ColumnType.DATE;
+		return time ? ColumnType.TIME : ColumnType.TEXT;
+	}
+	
+	private JSONObject findDataFile(String siteUrl, String fileId) {
+		HttpGet get = new HttpGet(siteUrl + "/api/files/" + fileId);
+		try (CloseableHttpResponse response = httpClient.execute(get)) {
+			String body = EntityUtils.toString(response.getEntity());
+			if (response.getStatusLine().getStatusCode() != HttpStatus.OK.value()) {
+				logger.info("{}: no file metadata, status {}", get.getURI(), response.getStatusLine().getStatusCode());
+				return null;
+			}
+			return new JSONObject(body).getJSONObject("data").getJSONObject("dataFile");
+		} catch (IOException | JSONException e) {
+			logger.warn("{}: could not read file metadata: {}", get.getURI(), e.getMessage());
+			return null;
+		}
+	}
+}
@@ -25,18 +25,29 @@ package eu.sshoc.dataversesuperset;
 
 import static org.springframework.beans.factory.config.ConfigurableBeanFactory.SCOPE_PROTOTYPE;
 
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InjectionPoint;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Scope;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -44,6 +55,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @SpringBootApplication
 @EnableTransactionManagement
 @EnableAsync
+@EnableScheduling
 public class DataverseSupersetApplication implements WebMvcConfigurer {
 	public static void main(String[] args) {
 		SpringApplication.run(DataverseSupersetApplication.class, args);
@@ -62,12 +74,85 @@ public class DataverseSupersetApplication implements WebMvcConfigurer {
 		return new HashMap<>();
 	}
 	
+	@Bean
+	@ConfigurationProperties(prefix = "custom.import")
+	public Map<String, String> importConfig() {
+		return new HashMap<>();
+	}
+	
+	@Bean
+	@ConfigurationProperties(prefix = "custom.spool")
+	public Map<String, String> spoolConfig() {
+		return new HashMap<>();
+	}
+	
+	@Bean
+	@ConfigurationProperties(prefix = "custom.jobs")
+	public Map<String, String> jobConfig() {
+		return new HashMap<>();
+	}
+	
 	@Bean
 	@ConfigurationProperties(prefix = "superset")
 	public Map<String, String> supersetConfig() {
 		return new HashMap<>();
 	}
 
+	@Bean
+	@ConfigurationProperties(prefix = "custom.http")
+	public Map<String, String> httpConfig() {
+		return new HashMap<>();
+	}
+	
+	/**
+	 * Pooled client shared by all outbound calls to Dataverse and Superset.
+	 */
+	@Bean(destroyMethod = "close")
+	public CloseableHttpClient httpClient() {
+		Map<String, String> httpConfig = httpConfig();
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(Integer.parseInt(httpConfig.getOrDefault("max-total", "50")));
+		connectionManager.setDefaultMaxPerRoute(Integer.parseInt(httpConfig.getOrDefault("max-per-route", "10")));
+		connectionManager.setValidateAfterInactivity(2000);
+		
+		int supersetMaxPerRoute = Integer.parseInt(httpConfig.getOrDefault("superset-max-per-route", "20"));
+		if (supersetConfig().containsKey("uri"))
+			connectionManager.setMaxPerRoute(route(supersetConfig().get("uri")), supersetMaxPerRoute);
+		int dataverseMaxPerRoute = Integer.parseInt(httpConfig.getOrDefault("dataverse-max-per-route", "10"));
+		for (String siteUrl : siteUrlMapping().values()) {
+			connectionManager.setMaxPerRoute(route(siteUrl), dataverseMaxPerRoute);
+		}
+		
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(millis(httpConfig.getOrDefault("connect-timeout", "10s")))
+				.setSocketTimeout(millis(httpConfig.getOrDefault("socket-timeout", "60s")))
+				.setConnectionRequestTimeout(millis(httpConfig.getOrDefault("connection-request-timeout", "30s")))
+				.build();
+		long keepAlive = DurationStyle.detectAndParse(httpConfig.getOrDefault("keep-alive", "30s")).toMillis();
+		
+		//content compression (gzip/deflate decoding) is enabled by the builder
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy((response, context) -> {
+					long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return serverKeepAlive > 0 ? serverKeepAlive : keepAlive;
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+				.build();
+	}
+	
+	private static HttpRoute route(String url) {
+		URI uri = URI.create(url);
+		int port = uri.getPort() >= 0 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+		return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()));
+	}
+	
+	private static int millis(String duration) {
+		return (int) DurationStyle.detectAndParse(duration).toMillis();
+	}
+	
 	@Override
 	public void addResourceHandlers(ResourceHandlerRegistry registry) {
 		registry.addResourceHandler("/**")
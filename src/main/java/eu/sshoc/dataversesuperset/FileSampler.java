@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.readers.Reader;
+import eu.sshoc.dataversesuperset.readers.RecordScanner;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reads the beginning of delimited files with {@code Range} requests, for previews without downloading
+ * the whole file. The requested size grows with the observed row width until enough rows arrived.
+ */
+@Component
+public class FileSampler {
+	
+	@Autowired
+	private Logger logger;
+	
+	@Autowired
+	private Map<String, String> importConfig;
+	
+	@Autowired
+	private CloseableHttpClient httpClient;
+	
+	/**
+	 * Sampled prefix of a file, cut after the last complete record.
+	 */
+	public static class Sample {
+		public String contentType;
+		public String fileName;
+		/**
+		 * Size of the whole file, -1 when unknown.
+		 */
+		public long fileSize = -1;
+		byte[] data = new byte[0];
+		int length;
+		boolean complete;
+		
+		public HttpEntity getEntity() {
+			ByteArrayEntity entity = new ByteArrayEntity(data, 0, length);
+			entity.setContentType(contentType);
+			return entity;
+		}
+	}
+	
+	/**
+	 * @return the first records of the file, or null when the file is not in a delimited format
+	 */
+	public Sample sample(String url, int rows) throws IOException {
+		int size = (int) DataSize.parse(importConfig.getOrDefault("sample-size", "64KB")).toBytes();
+		int maxSize = (int) DataSize.parse(importConfig.getOrDefault("sample-max-size", "16MB")).toBytes();
+		Sample sample = new Sample();
+		while (true) {
+			if (!fetch(url, sample, size))
+				return null;
+			int records = countRecords(sample);
+			if (sample.complete || records > rows || sample.length >= maxSize)
+				break;
+			//extend by the expected width of the missing rows plus a quarter, at least doubling without complete rows
+			long width = records == 0 ? sample.length : sample.length / records;
+			size = (int) Math.min(maxSize, Math.max(sample.length + 1L,
+					sample.length + (rows + 1 - records) * width * 5 / 4));
+		}
+		if (sample.fileSize < 0)
+			sample.fileSize = contentLength(url);
+		if (!sample.complete)
+			sample.length = lastRecordEnd(sample);
+		logger.debug("{}: sampled {} of {} bytes", url, sample.length, sample.fileSize);
+		return sample;
+	}
+	
+	/**
+	 * Extends the sample up to the given size.
+	 * @return false when the content type is not delimited
+	 */
+	private boolean fetch(String url, Sample sample, int size) throws IOException {
+		HttpGet get = new HttpGet(url);
+		get.setHeader(HttpHeaders.RANGE, "bytes=" + sample.length + "-" + (size - 1));
+		//ranges apply to the encoded content, so ask for the plain one
+		get.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+		try (CloseableHttpResponse response = httpClient.execute(get)) {
+			int statusCode = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+			if (statusCode == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+				sample.complete = true;
+				return true;
+			}
+			if (statusCode != HttpStatus.OK.value() && statusCode != HttpStatus.PARTIAL_CONTENT.value()
+					|| entity == null || entity.getContentType() == null) {
+				logger.error("{}: status code {}", url, statusCode);
+				get.abort();
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file not found");
+			}
+			sample.contentType = entity.getContentType().getValue();
+			if (!Reader.isDelimited(sample.contentType)) {
+				get.abort();
+				return false;
+			}
+			sample.fileName = SpoolCache.fileName(response);
+			if (statusCode == HttpStatus.PARTIAL_CONTENT.value()) {
+				sample.fileSize = totalSize(response.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+			} else {
+				//the range was ignored, the content starts at the beginning of the file
+				sample.length = 0;
+				sample.fileSize = entity.getContentLength();
+			}
+			try (InputStream content = entity.getContent()) {
+				sample.data = Arrays.copyOf(sample.data, size);
+				int read = 0;
+				while (sample.length < size && (read = content.read(sample.data, sample.length, size - sample.length)) >= 0) {
+					sample.length += read;
+				}
+				sample.complete = read < 0 || sample.length == sample.fileSize;
+				if (!sample.complete) {
+					//stop the transfer instead of draining the rest of the file
+					get.abort();
+				}
+			}
+		}
+		return true;
+	}
+	
+	private long contentLength(String url) {
+		HttpHead head = new HttpHead(url);
+		head.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+		try (CloseableHttpResponse response = httpClient.execute(head)) {
+			Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+			return contentLength == null ? -1 : Long.parseLong(contentLength.getValue());
+		} catch (IOException | NumberFormatException e) {
+			logger.debug("{}: no content length: {}", url, e.getMessage());
+			return -1;
+		}
+	}
+	
+	private static long totalSize(Header contentRange) {
+		//bytes <first>-<last>/<total or *>
+		if (contentRange == null)
+			return -1;
+		String value = contentRange.getValue();
+		String total = value.substring(value.lastIndexOf('/') + 1).trim();
+		try {
+			return total.equals("*") ? -1 : Long.parseLong(total);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * @return number of line breaks ending records, which is the number of complete records
+	 */
+	private static int countRecords(Sample sample) {
+		int records = 0;
+		RecordScanner scanner = new RecordScanner(Reader.delimiter(sample.contentType));
+		int state = RecordScanner.FIELD_START;
+		for (int i = dataStart(sample); i < sample.length; i++) {
+			byte b = sample.data[i];
+			if (RecordScanner.endsRecord(state, b))
+				records++;
+			state = scanner.next(state, b);
+		}
+		return records;
+	}
+	
+	private static int lastRecordEnd(Sample sample) {
+		int end = 0;
+		RecordScanner scanner = new RecordScanner(Reader.delimiter(sample.contentType));
+		int state = RecordScanner.FIELD_START;
+		for (int i = dataStart(sample); i < sample.length; i++) {
+			byte b = sample.data[i];
+			if (RecordScanner.endsRecord(state, b))
+				end = i + 1;
+			state = scanner.next(state, b);
+		}
+		return end;
+	}
+	
+	/**
+	 * @return position after the byte order mark, which the readers skip too
+	 */
+	private static int dataStart(Sample sample) {
+		return sample.length >= 3 && (sample.data[0] & 0xff) == 0xef && (sample.data[1] & 0xff) == 0xbb
+				&& (sample.data[2] & 0xff) == 0xbf ? 3 : 0;
+	}
+}
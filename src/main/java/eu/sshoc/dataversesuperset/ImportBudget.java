@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.readers.Reader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Admits import jobs against the memory and transfer budgets of this instance. Delimited and compressed
+ * files are streamed and need about the same memory whatever their size, spreadsheets keep shared strings
+ * and cell records in memory in proportion to the file size. Files of unknown size take the whole budget.
+ * <p>
+ * Small files run on separate fast lane workers, so they don't wait behind large imports.
+ */
+@Component
+public class ImportBudget {
+	
+	@Autowired
+	private Map<String, String> jobConfig;
+	
+	private int workers;
+	private int fastLaneWorkers;
+	private long smallFileSize;
+	private long memoryBudget;
+	private long transferBudget;
+	private long streamMemory;
+	private double spreadsheetMemoryFactor;
+	
+	private final Map<String, Admission> admitted = new HashMap<>();
+	private int runningWorkers;
+	private int runningFastLane;
+	private long usedMemory;
+	private long usedTransfer;
+	
+	private static class Admission {
+		final boolean fastLane;
+		final long memory;
+		final long transfer;
+		
+		Admission(boolean fastLane, long memory, long transfer) {
+			this.fastLane = fastLane;
+			this.memory = memory;
+			this.transfer = transfer;
+		}
+	}
+	
+	@PostConstruct
+	void init() {
+		workers = Integer.parseInt(jobConfig.getOrDefault("workers", "4"));
+		fastLaneWorkers = Integer.parseInt(jobConfig.getOrDefault("fast-lane-workers", "2"));
+		smallFileSize = size("small-file-size", "8MB");
+		memoryBudget = jobConfig.containsKey("memory-budget") ? size("memory-budget", null)
+				: Runtime.getRuntime().maxMemory() / 2;
+		transferBudget = size("transfer-budget", "2GB");
+		streamMemory = size("stream-memory", "64MB");
+		spreadsheetMemoryFactor = Double.parseDouble(jobConfig.getOrDefault("spreadsheet-memory-factor", "4"));
+	}
+	
+	public int getThreads() {
+		return workers + fastLaneWorkers;
+	}
+	
+	public long getSmallFileSize() {
+		return smallFileSize;
+	}
+	
+	long memoryCost(String contentType, String fileName, long fileBytes) {
+		if (contentType != null && (Reader.isDelimited(contentType) || Reader.isCompressed(contentType, fileName)))
+			return streamMemory;
+		return fileBytes < 0 ? memoryBudget : streamMemory + (long) (fileBytes * spreadsheetMemoryFactor);
+	}
+	
+	long transferCost(long fileBytes) {
+		return fileBytes < 0 ? transferBudget : fileBytes;
+	}
+	
+	/**
+	 * @return why the file can never be imported within the budget, or null
+	 */
+	public String refusal(DataInfo dataInfo) {
+		if (dataInfo.fileBytes < 0)
+			return null;
+		long memory = memoryCost(dataInfo.contentType, dataInfo.fileName, dataInfo.fileBytes);
+		if (memory <= memoryBudget)
+			return null;
+		return "the file would need about " + DataSize.ofBytes(memory).toMegabytes() + "MB of memory to import, more than the "
+				+ DataSize.ofBytes(memoryBudget).toMegabytes() + "MB available";
+	}
+	
+	/**
+	 * Reserves the job's share of the budget. Small jobs take a free fast lane worker first, others a free worker
+	 * when their costs fit into what is left of the budget or when no other worker is busy.
+	 * @return false when the job has to wait
+	 */
+	synchronized boolean admit(ImportJobs.Job job) {
+		long memory = memoryCost(job.contentType, job.fileName, job.fileSize);
+		long transfer = transferCost(job.fileSize);
+		boolean small = job.fileSize >= 0 && job.fileSize <= smallFileSize && memory <= streamMemory;
+		Admission admission;
+		if (small && runningFastLane < fastLaneWorkers) {
+			admission = new Admission(true, memory, transfer);
+			runningFastLane++;
+		} else if (runningWorkers < workers && (runningWorkers == 0
+				|| usedMemory + memory <= memoryBudget && usedTransfer + transfer <= transferBudget)) {
+			admission = new Admission(false, memory, transfer);
+			runningWorkers++;
+		} else {
+			return false;
+		}
+		usedMemory += admission.memory;
+		usedTransfer += admission.transfer;
+		admitted.put(job.tableName, admission);
+		return true;
+	}
+	
+	synchronized void release(String tableName) {
+		Admission admission = admitted.remove(tableName);
+		if (admission == null)
+			return;
+		if (admission.fastLane)
+			runningFastLane--;
+		else
+			runningWorkers--;
+		usedMemory -= admission.memory;
+		usedTransfer -= admission.transfer;
+	}
+	
+	/**
+	 * Releases admissions of jobs which were not started, when the claim failed after the admission.
+	 */
+	synchronized void retain(Collection<String> running) {
+		admitted.keySet().stream().filter(t -> !running.contains(t)).collect(Collectors.toList()).forEach(this::release);
+	}
+	
+	private long size(String key, String defaultValue) {
+		return DataSize.parse(jobConfig.getOrDefault(key, defaultValue)).toBytes();
+	}
+}
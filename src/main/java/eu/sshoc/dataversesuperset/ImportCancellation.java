@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cancellation token of an import. The import checks it between batches, blocking operations
+ * register an action which interrupts them, like aborting an HTTP request.
+ */
+public class ImportCancellation {
+	
+	/**
+	 * Token of an import which is never cancelled, it is shared and refuses to be cancelled.
+	 */
+	public static final ImportCancellation NONE = new ImportCancellation() {
+		@Override
+		public void cancel() {
+			throw new UnsupportedOperationException("the default cancellation token can't be cancelled");
+		}
+	};
+	
+	private final List<Runnable> actions = new ArrayList<>();
+	private volatile boolean cancelled;
+	
+	public interface Registration extends AutoCloseable {
+		@Override
+		void close();
+	}
+	
+	public void cancel() {
+		List<Runnable> running;
+		synchronized (actions) {
+			if (cancelled)
+				return;
+			cancelled = true;
+			running = new ArrayList<>(actions);
+		}
+		running.forEach(Runnable::run);
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * @throws CancellationException when the import was cancelled
+	 */
+	public void check() {
+		if (cancelled)
+			throw new CancellationException("import cancelled");
+	}
+	
+	/**
+	 * Runs the action on cancellation, or right away when already cancelled, until the registration is closed.
+	 */
+	public Registration onCancel(Runnable action) {
+		synchronized (actions) {
+			if (!cancelled) {
+				actions.add(action);
+				return () -> {
+					synchronized (actions) {
+						actions.remove(action);
+					}
+				};
+			}
+		}
+		action.run();
+		return () -> {};
+	}
+}
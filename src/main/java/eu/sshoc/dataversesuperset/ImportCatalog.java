@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Versions of the imported files, recorded per table: HTTP validators, size and content digest.
+ * Lets a repeated import of an unchanged file be skipped.
+ */
+@Component
+public class ImportCatalog {
+	
+	static final String TABLE = "dataverse_superset_catalog";
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	
+	private volatile boolean tableCreated;
+	
+	public static class Entry {
+		public String tableName;
+		public String fileUrl;
+		public String etag;
+		public String lastModified;
+		public long size;
+		public String sha256;
+		public long rowCount;
+		
+		/**
+		 * @return true when the downloaded file is the recorded version, by its digest when both are known
+		 * and by the validators otherwise
+		 */
+		public boolean matches(SpoolCache.Entry file) {
+			if (size != file.getSize())
+				return false;
+			if (sha256 != null && file.getSha256() != null)
+				return sha256.equals(file.getSha256());
+			return etag != null && etag.equals(file.getEtag())
+					|| lastModified != null && lastModified.equals(file.getLastModified());
+		}
+	}
+	
+	private void createTable() {
+		if (tableCreated)
+			return;
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+				+ "table_name varchar(63) PRIMARY KEY, file_url text NOT NULL, etag text, last_modified text, "
+				+ "size bigint NOT NULL, sha256 char(64), imported_at timestamp NOT NULL, row_count bigint)");
+		tableCreated = true;
+	}
+	
+	/**
+	 * @return the recorded version of the table, or null when it was not imported or the table is gone
+	 */
+	public Entry find(String tableName) {
+		createTable();
+		List<Entry> entries = jdbcTemplate.query("SELECT * FROM " + TABLE + " c WHERE table_name = ?"
+				+ " AND EXISTS (SELECT 1 FROM information_schema.tables t WHERE t.table_name = c.table_name)",
+				(rs, i) -> {
+					Entry entry = new Entry();
+					entry.tableName = rs.getString("table_name");
+					entry.fileUrl = rs.getString("file_url");
+					entry.etag = rs.getString("etag");
+					entry.lastModified = rs.getString("last_modified");
+					entry.size = rs.getLong("size");
+					entry.sha256 = rs.getString("sha256");
+					entry.rowCount = rs.getLong("row_count");
+					return entry;
+				}, tableName);
+		return entries.isEmpty() ? null : entries.get(0);
+	}
+	
+	/**
+	 * Records the imported version, to be called in the transaction making the table or the new rows visible.
+	 */
+	public void record(String tableName, String fileUrl, SpoolCache.Entry file, long rowCount) {
+		createTable();
+		jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE table_name = ?", tableName);
+		jdbcTemplate.update("INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)", tableName, fileUrl,
+				file.getEtag(), file.getLastModified(), file.getSize(), file.getSha256(),
+				new Timestamp(System.currentTimeMillis()), rowCount);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Progress of checkpointed imports: the position in the file up to which rows were committed
+ * to the staging table, recorded in the same transaction as the rows.
+ */
+@Component
+public class ImportCheckpoints {
+	
+	static final String TABLE = "dataverse_superset_checkpoint";
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	
+	private volatile boolean tableCreated;
+	
+	public static class Checkpoint {
+		public String tableName;
+		public String sha256;
+		public long position;
+		public long rowCount;
+	}
+	
+	private void createTable() {
+		if (tableCreated)
+			return;
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+				+ "table_name varchar(63) PRIMARY KEY, sha256 char(64) NOT NULL, position bigint NOT NULL, "
+				+ "row_count bigint NOT NULL, updated_at timestamp NOT NULL)");
+		tableCreated = true;
+	}
+	
+	/**
+	 * @return the progress of the staging table of the table, or null when there is none
+	 */
+	public Checkpoint find(String tableName) {
+		createTable();
+		List<Checkpoint> checkpoints = jdbcTemplate.query("SELECT * FROM " + TABLE + " WHERE table_name = ?",
+				(rs, i) -> {
+					Checkpoint checkpoint = new Checkpoint();
+					checkpoint.tableName = rs.getString("table_name");
+					checkpoint.sha256 = rs.getString("sha256");
+					checkpoint.position = rs.getLong("position");
+					checkpoint.rowCount = rs.getLong("row_count");
+					return checkpoint;
+				}, tableName);
+		return checkpoints.isEmpty() ? null : checkpoints.get(0);
+	}
+	
+	/**
+	 * Records the progress, to be called in the transaction committing the rows.
+	 */
+	public void save(String tableName, String sha256, long position, long rowCount) {
+		createTable();
+		jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE table_name = ?", tableName);
+		jdbcTemplate.update("INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP)",
+				tableName, sha256, position, rowCount);
+	}
+	
+	public void delete(String tableName) {
+		createTable();
+		jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE table_name = ?", tableName);
+	}
+}
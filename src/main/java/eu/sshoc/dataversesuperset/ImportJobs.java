@@ -0,0 +1,287 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnInfo;
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import eu.sshoc.dataversesuperset.DataInfo.FileVariant;
+import eu.sshoc.dataversesuperset.DataInfo.Status;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Import jobs kept in the database, so they survive restarts and can be run by any instance.
+ * A worker claims a queued job with {@code FOR UPDATE SKIP LOCKED} and keeps a lease on it by heartbeats;
+ * a running job whose heartbeat is older than the lease is claimed again.
+ */
+@Component
+public class ImportJobs {
+	
+	static final String TABLE = "dataverse_superset_job";
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+	
+	private volatile boolean tableCreated;
+	
+	public enum JobStatus {
+		QUEUED,
+		RUNNING,
+		COMPLETE,
+		ERROR,
+		CANCELLED
+	}
+	
+	public static class Job {
+		public String tableName;
+		public String siteUrl;
+		public String fileId;
+		public String fileUrl;
+		public String fileName;
+		public String variant;
+		public String contentType;
+		public long fileSize;
+		/**
+		 * Names and types of the columns, as a JSON array of objects.
+		 */
+		public String columns;
+		public JobStatus status;
+		public String error;
+		public long datasetId;
+		public String worker;
+		public int attempts;
+		
+		public boolean isActive() {
+			return status == JobStatus.QUEUED || status == JobStatus.RUNNING;
+		}
+		
+		/**
+		 * @return the file and columns to import, as chosen when the job was submitted
+		 */
+		public DataInfo toDataInfo() {
+			DataInfo dataInfo = new DataInfo(siteUrl, fileId, fileUrl);
+			dataInfo.fileName = fileName;
+			dataInfo.variant = variant == null ? null : FileVariant.valueOf(variant);
+			dataInfo.contentType = contentType;
+			dataInfo.fileBytes = fileSize;
+			try {
+				JSONArray array = new JSONArray(columns);
+				for (int i = 0; i < array.length(); i++) {
+					JSONObject column = array.getJSONObject(i);
+					dataInfo.columns.add(new ColumnInfo(column.getString("name"), ColumnType.valueOf(column.getString("type"))));
+				}
+			} catch (JSONException e) {
+				throw new IllegalArgumentException("invalid columns of the import job: " + e.getMessage(), e);
+			}
+			return dataInfo;
+		}
+		
+		/**
+		 * Shows the job state in the session copy of the data.
+		 */
+		public void applyTo(DataInfo dataInfo) {
+			switch (status) {
+			case QUEUED:
+			case RUNNING:
+				dataInfo.status = Status.IN_PROGRESS;
+				break;
+			case COMPLETE:
+				dataInfo.datasetId = datasetId;
+				dataInfo.status = Status.COMPLETE;
+				break;
+			case ERROR:
+				dataInfo.error = error;
+				dataInfo.status = Status.ERROR;
+				break;
+			case CANCELLED:
+				dataInfo.status = Status.CANCELLED;
+				break;
+			}
+		}
+	}
+	
+	static String toJson(List<ColumnInfo> columns) {
+		JSONArray array = new JSONArray();
+		for (ColumnInfo column : columns) {
+			array.put(new JSONObject().put("name", column.name).put("type", column.type.name()));
+		}
+		return array.toString();
+	}
+	
+	private static final RowMapper<Job> JOB_MAPPER = (rs, i) -> {
+		Job job = new Job();
+		job.tableName = rs.getString("table_name");
+		job.siteUrl = rs.getString("site_url");
+		job.fileId = rs.getString("file_id");
+		job.fileUrl = rs.getString("file_url");
+		job.fileName = rs.getString("file_name");
+		job.variant = rs.getString("variant");
+		job.contentType = rs.getString("content_type");
+		job.fileSize = rs.getObject("file_size") == null ? -1 : rs.getLong("file_size");
+		job.columns = rs.getString("columns");
+		job.status = JobStatus.valueOf(rs.getString("status"));
+		job.error = rs.getString("error");
+		job.datasetId = rs.getLong("dataset_id");
+		job.worker = rs.getString("worker");
+		job.attempts = rs.getInt("attempts");
+		return job;
+	};
+	
+	private void createTable() {
+		if (tableCreated)
+			return;
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+				+ "table_name varchar(63) PRIMARY KEY, site_url text, file_id text, file_url text NOT NULL, "
+				+ "file_name text, variant varchar(16), columns text NOT NULL, status varchar(16) NOT NULL, "
+				+ "error text, dataset_id bigint, worker varchar(255), attempts int NOT NULL DEFAULT 0, "
+				+ "heartbeat_at timestamp, created_at timestamp NOT NULL, finished_at timestamp, content_type text, "
+				+ "file_size bigint)");
+		jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_status_i ON " + TABLE + " (status, created_at)");
+		tableCreated = true;
+	}
+	
+	public Job find(String tableName) {
+		createTable();
+		List<Job> jobs = jdbcTemplate.query("SELECT * FROM " + TABLE + " WHERE table_name = ?", JOB_MAPPER, tableName);
+		return jobs.isEmpty() ? null : jobs.get(0);
+	}
+	
+	/**
+	 * Queues an import of the file, unless one for the same table is already queued or running,
+	 * or completed within the reuse period.
+	 * @return the new job, or the one which makes it unnecessary
+	 */
+	public Job submit(DataInfo dataInfo, long reuseSeconds) {
+		createTable();
+		String columns = toJson(dataInfo.columns);
+		try {
+			return transactionTemplate.execute(status -> {
+				List<Job> jobs = jdbcTemplate.query("SELECT * FROM " + TABLE + " WHERE table_name = ? FOR UPDATE",
+						JOB_MAPPER, dataInfo.getName());
+				if (!jobs.isEmpty() && (jobs.get(0).isActive() || jobs.get(0).status == JobStatus.COMPLETE
+						&& jdbcTemplate.queryForObject("SELECT count(*) FROM " + TABLE + " WHERE table_name = ?"
+								+ " AND finished_at > CURRENT_TIMESTAMP - ? * INTERVAL '1 second'",
+						Integer.class, dataInfo.getName(), reuseSeconds) > 0))
+					return jobs.get(0);
+				jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE table_name = ?", dataInfo.getName());
+				jdbcTemplate.update("INSERT INTO " + TABLE + " (table_name, site_url, file_id, file_url, file_name, "
+								+ "variant, content_type, file_size, columns, status, created_at) "
+								+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)",
+						dataInfo.getName(), dataInfo.siteUrl, dataInfo.fileId, dataInfo.fileUrl, dataInfo.fileName,
+						dataInfo.variant == null ? null : dataInfo.variant.name(), dataInfo.contentType,
+						dataInfo.fileBytes < 0 ? null : dataInfo.fileBytes, columns, JobStatus.QUEUED.name());
+				return find(dataInfo.getName());
+			});
+		} catch (DuplicateKeyException e) {
+			//queued at the same time by another instance
+			return find(dataInfo.getName());
+		}
+	}
+	
+	/**
+	 * Takes the oldest queued job, or a running one whose worker stopped sending heartbeats.
+	 * The times are compared on the database clock, so the instances' clocks don't have to agree.
+	 * A job that is not admitted stays queued.
+	 * @param maxFileSize only jobs of files with known size up to this, any job when negative
+	 * @return the claimed job, or null when there is none
+	 */
+	public Job claim(String worker, long leaseSeconds, long maxFileSize, Predicate<Job> admit) {
+		createTable();
+		return transactionTemplate.execute(status -> {
+			List<Job> jobs = jdbcTemplate.query("SELECT * FROM " + TABLE + " WHERE (status = ?"
+							+ " OR status = ? AND heartbeat_at < CURRENT_TIMESTAMP - ? * INTERVAL '1 second')"
+							+ (maxFileSize < 0 ? "" : " AND file_size <= " + maxFileSize)
+							+ " ORDER BY created_at LIMIT 1 FOR UPDATE SKIP LOCKED",
+					JOB_MAPPER, JobStatus.QUEUED.name(), JobStatus.RUNNING.name(), leaseSeconds);
+			if (jobs.isEmpty() || !admit.test(jobs.get(0)))
+				return null;
+			Job job = jobs.get(0);
+			jdbcTemplate.update("UPDATE " + TABLE + " SET status = ?, worker = ?, attempts = attempts + 1, "
+					+ "heartbeat_at = CURRENT_TIMESTAMP WHERE table_name = ?", JobStatus.RUNNING.name(), worker, job.tableName);
+			job.status = JobStatus.RUNNING;
+			job.worker = worker;
+			job.attempts++;
+			return job;
+		});
+	}
+	
+	/**
+	 * Extends the lease of a job run by the worker.
+	 * @return false when the job was cancelled or taken over by another worker
+	 */
+	public boolean heartbeat(String worker, String tableName) {
+		return jdbcTemplate.update("UPDATE " + TABLE + " SET heartbeat_at = CURRENT_TIMESTAMP "
+				+ "WHERE table_name = ? AND worker = ? AND status = ?", tableName, worker, JobStatus.RUNNING.name()) > 0;
+	}
+	
+	/**
+	 * Queues a failed job again, to be continued by any worker.
+	 */
+	public void requeue(Job job, String error) {
+		jdbcTemplate.update("UPDATE " + TABLE + " SET status = ?, error = ?, worker = NULL, heartbeat_at = NULL "
+						+ "WHERE table_name = ? AND worker = ? AND status = ?",
+				JobStatus.QUEUED.name(), error, job.tableName, job.worker, JobStatus.RUNNING.name());
+	}
+	
+	/**
+	 * Cancels a queued or running job, a running one stops when its worker notices.
+	 * @return the cancelled job, or null when there was no job to cancel
+	 */
+	public Job cancel(String tableName) {
+		createTable();
+		int updated = jdbcTemplate.update("UPDATE " + TABLE + " SET status = ?, heartbeat_at = NULL, "
+						+ "finished_at = CURRENT_TIMESTAMP WHERE table_name = ? AND status IN (?, ?)",
+				JobStatus.CANCELLED.name(), tableName, JobStatus.QUEUED.name(), JobStatus.RUNNING.name());
+		return updated > 0 ? find(tableName) : null;
+	}
+	
+	/**
+	 * Records the job result, unless the lease was lost and the job was taken over by another worker.
+	 * @return false when the result was not recorded
+	 */
+	public boolean finish(Job job, long datasetId, String error) {
+		JobStatus status = error == null ? JobStatus.COMPLETE : JobStatus.ERROR;
+		boolean recorded = jdbcTemplate.update("UPDATE " + TABLE + " SET status = ?, dataset_id = ?, error = ?, "
+						+ "heartbeat_at = NULL, finished_at = CURRENT_TIMESTAMP WHERE table_name = ? AND worker = ? AND status = ?",
+				status.name(), datasetId, error, job.tableName, job.worker, JobStatus.RUNNING.name()) > 0;
+		if (recorded) {
+			job.status = status;
+			job.datasetId = datasetId;
+			job.error = error;
+		}
+		return recorded;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import eu.sshoc.dataversesuperset.readers.DelimitedReader;
+import eu.sshoc.dataversesuperset.readers.Reader;
+import eu.sshoc.dataversesuperset.readers.Utf8Slice;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs an import as a pipeline of stages connected by bounded queues: tokenizing ({@link Reader}),
+ * conversion (parallel) and writing. The writer runs on the calling thread,
+ * so it stays in the caller's transaction. Full queues block the producing stage.
+ * <p>
+ * Large local delimited files are instead split into parts at record boundaries,
+ * which are tokenized and converted in parallel on a fork-join pool.
+ */
+@Component
+public class ImportPipeline {
+	
+	private static final Future<ColumnBatch> END = CompletableFuture.completedFuture(null);
+	
+	@Autowired
+	private Map<String, String> importConfig;
+	
+	private ExecutorService stageExecutor;
+	private ExecutorService converterExecutor;
+	private ForkJoinPool partPool;
+	private long parallelThreshold;
+	private long partSize;
+	private boolean ordered;
+	
+	@PostConstruct
+	void init() {
+		int converterThreads = Integer.parseInt(importConfig.getOrDefault("converter-threads",
+				Integer.toString(Runtime.getRuntime().availableProcessors())));
+		stageExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory("import-stage-"));
+		converterExecutor = Executors.newFixedThreadPool(converterThreads, new CustomizableThreadFactory("import-convert-"));
+		partPool = new ForkJoinPool(converterThreads);
+		parallelThreshold = DataSize.parse(importConfig.getOrDefault("parallel-threshold", "64MB")).toBytes();
+		partSize = DataSize.parse(importConfig.getOrDefault("part-size", "16MB")).toBytes();
+		ordered = Boolean.parseBoolean(importConfig.getOrDefault("ordered", "true"));
+	}
+	
+	@PreDestroy
+	void shutdown() {
+		stageExecutor.shutdownNow();
+		converterExecutor.shutdownNow();
+		partPool.shutdownNow();
+	}
+	
+	/**
+	 * Reads all rows from the reader, converts them to the given column types
+	 * and passes them to the writer in the original order.
+	 * @return number of written rows
+	 */
+	public long run(Reader reader, ColumnType[] types, RowWriter writer) throws IOException, SQLException {
+		if (reader instanceof DelimitedReader && ((DelimitedReader) reader).getDataSize() >= parallelThreshold)
+			return runParts((DelimitedReader) reader, ((DelimitedReader) reader).getDataStart(),
+					((DelimitedReader) reader).getFileSize(), types, writer);
+		int batchSize = Integer.parseInt(importConfig.getOrDefault("batch-size", "9000"));
+		int queueCapacity = Integer.parseInt(importConfig.getOrDefault("queue-capacity", "8"));
+		BlockingQueue<Future<ColumnBatch>> batches = new ArrayBlockingQueue<>(queueCapacity);
+		//batches are recycled once written; queued, converting and writing batches are bounded by the pool size
+		BlockingQueue<ColumnBatch> pool = new ArrayBlockingQueue<>(queueCapacity + 2);
+		for (int i = 0; i < queueCapacity + 2; i++) {
+			pool.add(new ColumnBatch(types, batchSize));
+		}
+		CountDownLatch tokenizerDone = new CountDownLatch(1);
+		
+		Future<?> tokenizer = stageExecutor.submit(() -> {
+			try {
+				while (reader.hasNext()) {
+					List<List<? extends CharSequence>> records = new ArrayList<>(batchSize);
+					while (records.size() < batchSize && reader.hasNext()) {
+						records.add(reader.nextFields());
+					}
+					ColumnBatch batch = pool.take();
+					batches.put(converterExecutor.submit(() -> convert(records, batch)));
+				}
+				batches.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				try {
+					batches.put(CompletableFuture.failedFuture(e));
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			} finally {
+				tokenizerDone.countDown();
+			}
+		});
+		
+		long rowCount = 0;
+		try {
+			for (Future<ColumnBatch> future = batches.take(); future != END; future = batches.take()) {
+				ColumnBatch batch = await(future);
+				writer.write(batch);
+				rowCount += batch.size();
+				pool.put(batch);
+			}
+			return rowCount;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("import interrupted");
+		} finally {
+			tokenizer.cancel(true);
+			batches.forEach(f -> f.cancel(true));
+			try {
+				tokenizerDone.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Reads only the rows from the given position, which has to be the start of a record.
+	 * @return number of written rows
+	 */
+	public long runFrom(DelimitedReader reader, long start, ColumnType[] types, RowWriter writer)
+			throws IOException, SQLException {
+		return runParts(reader, start, reader.getFileSize(), types, writer);
+	}
+	
+	/**
+	 * Reads only the rows between two record boundaries, as returned by {@link #split}.
+	 * @return number of written rows
+	 */
+	public long runRange(DelimitedReader reader, long start, long end, ColumnType[] types, RowWriter writer)
+			throws IOException, SQLException {
+		return runParts(reader, start, end, types, writer);
+	}
+	
+	/**
+	 * Splits the records from the given record start to the end of the file into chunks of roughly the given size.
+	 * @return ascending chunk boundaries
+	 */
+	public long[] split(DelimitedReader reader, long start, long chunkSize) throws IOException {
+		return reader.split(start, reader.getFileSize(), chunkSize, partPool);
+	}
+	
+	/**
+	 * Converts parts of the file in parallel, at most queue-capacity parts at a time. The rows are written
+	 * in the file order, or in the order the parts complete when {@code ordered} is disabled.
+	 */
+	private long runParts(DelimitedReader reader, long start, long end, ColumnType[] types, RowWriter writer)
+			throws IOException, SQLException {
+		int batchSize = Integer.parseInt(importConfig.getOrDefault("batch-size", "9000"));
+		int queueCapacity = Integer.parseInt(importConfig.getOrDefault("queue-capacity", "8"));
+		long[] boundaries = reader.split(start, end, partSize, partPool);
+		Queue<ColumnBatch> pool = new ConcurrentLinkedQueue<>();
+		Deque<CompletableFuture<List<ColumnBatch>>> pending = new ArrayDeque<>();
+		BlockingQueue<CompletableFuture<List<ColumnBatch>>> completed = new LinkedBlockingQueue<>();
+		
+		long rowCount = 0;
+		int nextPart = 0;
+		try {
+			while (nextPart < boundaries.length - 1 || !pending.isEmpty()) {
+				while (nextPart < boundaries.length - 1 && pending.size() < queueCapacity) {
+					DelimitedReader.Cursor cursor = reader.cursor(boundaries[nextPart], boundaries[nextPart + 1]);
+					CompletableFuture<List<ColumnBatch>> part = CompletableFuture.supplyAsync(
+							() -> convert(cursor, types, batchSize, pool), partPool);
+					if (!ordered)
+						part.whenComplete((batches, e) -> completed.add(part));
+					pending.add(part);
+					nextPart++;
+				}
+				CompletableFuture<List<ColumnBatch>> part = ordered ? pending.peek() : completed.take();
+				pending.remove(part);
+				for (ColumnBatch batch : await(part)) {
+					writer.write(batch);
+					rowCount += batch.size();
+					pool.add(batch);
+				}
+			}
+			return rowCount;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("import interrupted");
+		} finally {
+			pending.forEach(f -> f.cancel(true));
+		}
+	}
+	
+	private static List<ColumnBatch> convert(DelimitedReader.Cursor cursor, ColumnType[] types, int batchSize,
+			Queue<ColumnBatch> pool) {
+		List<ColumnBatch> batches = new ArrayList<>();
+		ColumnBatch batch = null;
+		try {
+			for (List<Utf8Slice> record = cursor.next(); record != null; record = cursor.next()) {
+				if (batch == null || batch.isFull()) {
+					batch = pool.poll();
+					if (batch == null)
+						batch = new ColumnBatch(types, batchSize);
+					batch.clear();
+					batches.add(batch);
+				}
+				batch.addRow(record);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return batches;
+	}
+	
+	private static ColumnBatch convert(List<List<? extends CharSequence>> records, ColumnBatch batch) {
+		batch.clear();
+		for (List<? extends CharSequence> record : records) {
+			batch.addRow(record);
+		}
+		return batch;
+	}
+	
+	private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException)
+				throw ((UncheckedIOException) cause).getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.Status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Imports started in this process, by table name. Sessions importing the same file share one {@link DataInfo},
+ * so a second request joins the running job and sees its status, and a recently finished import is shown
+ * without running it again.
+ */
+@Component
+public class ImportRegistry {
+	
+	@Autowired
+	private Map<String, String> jobConfig;
+	
+	@Autowired
+	private ImportJobs importJobs;
+	@Autowired
+	private ImportBudget importBudget;
+	
+	private final Map<String, Entry> imports = new ConcurrentHashMap<>();
+	
+	private static class Entry {
+		final DataInfo dataInfo;
+		volatile boolean submitted;
+		volatile long finishedAt;
+		
+		Entry(DataInfo dataInfo) {
+			this.dataInfo = dataInfo;
+		}
+	}
+	
+	/**
+	 * @return the shared data of a running or recently finished import, or null
+	 */
+	public DataInfo find(String tableName) {
+		Entry entry = imports.get(tableName);
+		if (entry == null)
+			return null;
+		refresh(entry);
+		if (isExpired(entry)) {
+			imports.remove(tableName, entry);
+			return null;
+		}
+		return entry.dataInfo;
+	}
+	
+	/**
+	 * Starts the import, or joins the one already running or recently completed for the same table,
+	 * here or on another instance.
+	 * @return the data to keep in the session, shared with the other sessions importing the file
+	 */
+	public DataInfo start(DataInfo dataInfo) {
+		imports.values().removeIf(this::isExpired);
+		String tableName = dataInfo.getName();
+		Entry entry = new Entry(dataInfo);
+		Status previous = dataInfo.status;
+		dataInfo.status = Status.IN_PROGRESS;
+		//the entry is published before the job is submitted, so the database is not queried under the map lock
+		while (true) {
+			Entry current = imports.putIfAbsent(tableName, entry);
+			if (current == null)
+				break;
+			if (current.dataInfo.status != Status.ERROR && current.dataInfo.status != Status.CANCELLED) {
+				dataInfo.status = previous;
+				return current.dataInfo;
+			}
+			if (imports.replace(tableName, current, entry))
+				break;
+		}
+		
+		try {
+			String refusal = importBudget.refusal(dataInfo);
+			if (refusal != null) {
+				dataInfo.error = refusal;
+				dataInfo.status = Status.ERROR;
+				entry.finishedAt = System.currentTimeMillis();
+				return dataInfo;
+			}
+			ImportJobs.Job job = importJobs.submit(dataInfo, reusePeriod());
+			job.applyTo(dataInfo);
+			entry.submitted = true;
+			if (!job.isActive())
+				entry.finishedAt = System.currentTimeMillis();
+			return dataInfo;
+		} catch (RuntimeException e) {
+			imports.remove(tableName, entry);
+			dataInfo.status = previous;
+			throw e;
+		}
+	}
+	
+	/**
+	 * Publishes the result of a job run or cancelled in this process to the waiting sessions.
+	 */
+	void finished(ImportJobs.Job job) {
+		Entry entry = imports.get(job.tableName);
+		if (entry != null) {
+			job.applyTo(entry.dataInfo);
+			entry.finishedAt = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Picks up the result of a job run by another instance.
+	 */
+	private void refresh(Entry entry) {
+		if (!entry.submitted || entry.finishedAt != 0)
+			return;
+		ImportJobs.Job job = importJobs.find(entry.dataInfo.getName());
+		if (job != null && !job.isActive()) {
+			job.applyTo(entry.dataInfo);
+			entry.finishedAt = System.currentTimeMillis();
+		}
+	}
+	
+	private boolean isExpired(Entry entry) {
+		return entry.finishedAt != 0 && (entry.dataInfo.status == Status.ERROR
+				|| entry.dataInfo.status == Status.CANCELLED || System.currentTimeMillis() - entry.finishedAt > reusePeriod() * 1000);
+	}
+	
+	private long reusePeriod() {
+		return DurationStyle.detectAndParse(jobConfig.getOrDefault("reuse-period", "10m")).getSeconds();
+	}
+}
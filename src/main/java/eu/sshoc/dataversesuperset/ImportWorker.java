@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the queued import jobs admitted by the {@link ImportBudget}. Every instance polls the job table,
+ * so adding instances adds import capacity, and jobs of a stopped instance are taken over once their lease expires.
+ */
+@Component
+public class ImportWorker {
+	
+	@Autowired
+	private Logger logger;
+	
+	@Autowired
+	private Map<String, String> jobConfig;
+	
+	@Autowired
+	private ImportJobs importJobs;
+	@Autowired
+	private ImportRegistry importRegistry;
+	@Autowired
+	private DataSaver dataSaver;
+	@Autowired
+	private Superset superset;
+	@Autowired
+	private ImportBudget importBudget;
+	@Autowired
+	private ImportCheckpoints importCheckpoints;
+	@Autowired
+	private TaskScheduler taskScheduler;
+	
+	private final String worker = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+	private final Map<String, ImportCancellation> running = new ConcurrentHashMap<>();
+	private ExecutorService jobExecutor;
+	
+	@PostConstruct
+	void init() {
+		jobExecutor = Executors.newFixedThreadPool(importBudget.getThreads(), new CustomizableThreadFactory("import-job-"));
+	}
+	
+	@PreDestroy
+	void shutdown() {
+		jobExecutor.shutdownNow();
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		taskScheduler.scheduleWithFixedDelay(this::poll, duration("poll-interval", "2s"));
+		taskScheduler.scheduleWithFixedDelay(this::heartbeat, duration("heartbeat-interval", "10s"));
+	}
+	
+	/**
+	 * Claims jobs while they are admitted. The oldest job waits for enough budget to be released,
+	 * meanwhile small files are claimed for the fast lane.
+	 */
+	void poll() {
+		long leaseSeconds = duration("lease", "60s").getSeconds();
+		try {
+			while (true) {
+				ImportJobs.Job job = importJobs.claim(worker, leaseSeconds, -1, importBudget::admit);
+				if (job == null)
+					job = importJobs.claim(worker, leaseSeconds, importBudget.getSmallFileSize(), importBudget::admit);
+				if (job == null)
+					break;
+				ImportJobs.Job claimed = job;
+				ImportCancellation cancellation = new ImportCancellation();
+				running.put(claimed.tableName, cancellation);
+				jobExecutor.execute(() -> run(claimed, cancellation));
+			}
+		} catch (DataAccessException e) {
+			logger.warn("could not poll import jobs: {}", e.getMessage());
+			importBudget.retain(running.keySet());
+		}
+	}
+	
+	/**
+	 * Extends the leases of the running jobs, and stops the ones cancelled on other instances.
+	 */
+	void heartbeat() {
+		try {
+			running.forEach((tableName, cancellation) -> {
+				if (!importJobs.heartbeat(worker, tableName))
+					cancellation.cancel();
+			});
+		} catch (DataAccessException e) {
+			logger.warn("could not extend the import job leases: {}", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Cancels the import, a running one is stopped at once on this instance.
+	 * @return false when there was no queued or running import of the table
+	 */
+	public boolean cancel(String tableName) {
+		ImportJobs.Job job = importJobs.cancel(tableName);
+		ImportCancellation cancellation = running.get(tableName);
+		if (cancellation != null)
+			cancellation.cancel();
+		if (job == null)
+			return false;
+		logger.info("{}: import cancelled", tableName);
+		importRegistry.finished(job);
+		return true;
+	}
+	
+	void run(ImportJobs.Job job, ImportCancellation cancellation) {
+		try {
+			int maxAttempts = Integer.parseInt(jobConfig.getOrDefault("max-attempts", "3"));
+			if (job.attempts > maxAttempts) {
+				logger.error("{}: giving up after {} attempts", job.tableName, maxAttempts);
+				//the result is only published while the job is still ours, it may have been cancelled
+				//or taken over by another worker, which may be resuming the staging table
+				if (importJobs.finish(job, 0, "import did not finish in " + maxAttempts + " attempts")) {
+					deleteCheckpoint(job.tableName);
+					importRegistry.finished(job);
+				}
+				return;
+			}
+			
+			boolean created = false;
+			try {
+				DataInfo dataInfo = job.toDataInfo();
+				//the import is complete once the table is swapped in, a later cancellation does not undo it
+				created = dataSaver.createTable(dataInfo, cancellation);
+				//a re-import swaps the table under the existing dataset
+				long datasetId = superset.findDataset(job.tableName);
+				if (importJobs.finish(job, datasetId >= 0 ? datasetId : superset.createDataset(job.tableName), null))
+					importRegistry.finished(job);
+			} catch (CancellationException e) {
+				//the job state was already changed by the cancellation, the staging table is dropped
+				logger.info("{}: import stopped", job.tableName);
+			} catch (Exception e) {
+				if (job.attempts < maxAttempts && isTransient(e) && importCheckpoints.find(job.tableName) != null) {
+					logger.warn("{}: import interrupted, continuing from the last checkpoint: {}", job.tableName, e.toString());
+					importJobs.requeue(job, e.getMessage());
+					return;
+				}
+				logger.error("could not load " + job.fileUrl, e);
+				if (importJobs.finish(job, 0, e.getMessage())) {
+					deleteCheckpoint(job.tableName);
+					importRegistry.finished(job);
+				}
+				if (created)
+					deleteUnusedTable(job.tableName);
+			}
+		} finally {
+			running.remove(job.tableName);
+			importBudget.release(job.tableName);
+		}
+	}
+	
+	/**
+	 * Drops what a failed import kept to be resumed, a later import of the table starts over.
+	 */
+	private void deleteCheckpoint(String tableName) {
+		try {
+			dataSaver.deleteCheckpoint(tableName);
+		} catch (DataAccessException e) {
+			logger.warn("{}: could not drop the staging table of the failed import: {}", tableName, e.getMessage());
+		}
+	}
+	
+	/**
+	 * Drops a table created by a failed import, unless a dataset was made for it meanwhile.
+	 * Replaced tables are never dropped, their datasets and charts use them.
+	 */
+	private void deleteUnusedTable(String tableName) {
+		try {
+			if (superset.findDataset(tableName) < 0)
+				dataSaver.deleteTable(tableName);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("{}: keeping the table, its dataset could not be checked: {}", tableName, e.toString());
+		}
+	}
+	
+	/**
+	 * @return true for failures of the connection to the database or the file server, which may not happen again
+	 */
+	private static boolean isTransient(Exception e) {
+		return e instanceof IOException || e instanceof TransientDataAccessException
+				|| e instanceof RecoverableDataAccessException || e instanceof DataAccessResourceFailureException;
+	}
+	
+	private Duration duration(String key, String defaultValue) {
+		return DurationStyle.detectAndParse(jobConfig.getOrDefault(key, defaultValue));
+	}
+	
+	private static String hostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			return "worker";
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generic fallback writer using batched {@code INSERT} statements.
+ */
+class InsertRowWriter implements RowWriter {
+	
+	private static final Map<ColumnType, Integer> SQL_TYPES = Map.of(
+			ColumnType.BOOLEAN, Types.BOOLEAN,
+			ColumnType.INTEGER, Types.BIGINT,
+			ColumnType.FLOATING, Types.NUMERIC,
+			ColumnType.DATE, Types.DATE,
+			ColumnType.TIME, Types.TIME,
+			ColumnType.DATETIME, Types.TIMESTAMP,
+			ColumnType.TEXT, Types.VARCHAR);
+	
+	private final JdbcTemplate jdbcTemplate;
+	private final String insertValues;
+	
+	InsertRowWriter(JdbcTemplate jdbcTemplate, String tableName, DataInfo dataInfo) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.insertValues = "INSERT INTO " + tableName + " VALUES ("
+				+ dataInfo.columns.stream().map(c -> "?").collect(Collectors.joining(", "))
+				+ ")";
+	}
+	
+	@Override
+	public void write(ColumnBatch batch) {
+		jdbcTemplate.batchUpdate(insertValues, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int row) throws SQLException {
+				for (int column = 0; column < batch.types.length; column++) {
+					setValue(ps, batch, row, column);
+				}
+			}
+			
+			@Override
+			public int getBatchSize() {
+				return batch.size();
+			}
+		});
+	}
+	
+	private static void setValue(PreparedStatement ps, ColumnBatch batch, int row, int column) throws SQLException {
+		ColumnType type = batch.types[column];
+		int index = column + 1;
+		if (batch.isNull(row, column)) {
+			ps.setNull(index, SQL_TYPES.get(type));
+			return;
+		}
+		switch (type) {
+		case BOOLEAN:
+			ps.setBoolean(index, batch.longs[column][row] != 0);
+			break;
+		case INTEGER:
+			ps.setLong(index, batch.longs[column][row]);
+			break;
+		case FLOATING:
+			ps.setDouble(index, batch.doubles[column][row]);
+			break;
+		case DATE:
+			ps.setDate(index, Date.valueOf(LocalDate.ofEpochDay(batch.longs[column][row])));
+			break;
+		case TIME:
+			ps.setTime(index, Time.valueOf(LocalTime.ofSecondOfDay(batch.longs[column][row])));
+			break;
+		case DATETIME:
+			long micros = batch.longs[column][row];
+			ps.setTimestamp(index, Timestamp.valueOf(LocalDateTime.of(
+					LocalDate.ofEpochDay(Math.floorDiv(micros, 86_400_000_000L)),
+					LocalTime.ofNanoOfDay(Math.floorMod(micros, 86_400_000_000L) * 1000))));
+			break;
+		default:
+			int start = batch.textStart[column][row];
+			ps.setString(index, new String(batch.text, start, batch.textEnd[column][row] - start, StandardCharsets.UTF_8));
+		}
+	}
+	
+	@Override
+	public void finish() {
+		//every batch is already sent
+	}
+	
+	@Override
+	public void close() {
+		//nothing to release
+	}
+}
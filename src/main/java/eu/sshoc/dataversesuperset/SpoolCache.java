@@ -0,0 +1,456 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.readers.LocalFileEntity;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Local on-disk cache of downloaded data files. Each file version (URL plus ETag, Last-Modified and size)
+ * is downloaded once, later requests are revalidated with a conditional GET. Least recently used files
+ * are evicted when the cache grows over its size limit, files opened by a reader are never deleted.
+ */
+@Component
+public class SpoolCache {
+	
+	@Autowired
+	private Logger logger;
+	
+	@Autowired
+	private Map<String, String> spoolConfig;
+	
+	@Autowired
+	private CloseableHttpClient httpClient;
+	
+	private Path directory;
+	private long maxSize;
+	private long maxAge;
+	private long totalSize;
+	
+	/**
+	 * Current file version per URL, in access order.
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Striped locks letting one download per URL run at a time.
+	 */
+	private final Object[] downloadLocks = Stream.generate(Object::new).limit(64).toArray();
+	
+	@PostConstruct
+	void init() throws IOException {
+		directory = Paths.get(spoolConfig.getOrDefault("directory",
+				Paths.get(System.getProperty("java.io.tmpdir"), "dataverse-superset-spool").toString()));
+		maxSize = DataSize.parse(spoolConfig.getOrDefault("max-size", "10GB")).toBytes();
+		maxAge = DurationStyle.detectAndParse(spoolConfig.getOrDefault("max-age", "1h")).toMillis();
+		Files.createDirectories(directory);
+		
+		List<Entry> stored = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				if (fileName.endsWith(".tmp")) {
+					Files.deleteIfExists(file);
+				} else if (fileName.endsWith(".properties")) {
+					Entry entry = readEntry(file);
+					if (entry != null)
+						stored.add(entry);
+				}
+			}
+		}
+		stored.sort(Comparator.comparingLong(e -> e.lastAccess));
+		synchronized (this) {
+			for (Entry entry : stored) {
+				entries.put(entry.url, entry);
+				totalSize += entry.size;
+			}
+			evict();
+		}
+	}
+	
+	/**
+	 * Returns the current version of the file, downloading it only when it is not cached yet or has changed.
+	 * The returned entry must be closed after reading.
+	 */
+	public Entry open(String url) throws IOException {
+		return open(url, null, null);
+	}
+	
+	/**
+	 * Like {@link #open(String)}, for a file not in the cache the request is made conditional on the given
+	 * validators of a version seen before.
+	 * @return null when the server confirms that version is still current
+	 */
+	public Entry open(String url, String knownEtag, String knownLastModified) throws IOException {
+		return open(url, knownEtag, knownLastModified, ImportCancellation.NONE);
+	}
+	
+	/**
+	 * Like {@link #open(String, String, String)}, a cancellation aborts the download.
+	 */
+	public Entry open(String url, String knownEtag, String knownLastModified, ImportCancellation cancellation)
+			throws IOException {
+		cancellation.check();
+		synchronized (downloadLocks[Math.floorMod(url.hashCode(), downloadLocks.length)]) {
+			Entry cached;
+			synchronized (this) {
+				cached = entries.get(url);
+				if (cached != null && cached.etag == null && cached.lastModified == null
+						&& System.currentTimeMillis() - cached.stored < maxAge) {
+					//without validators the file can't be revalidated, trust it for a while
+					cached.acquire();
+					return cached;
+				}
+			}
+			
+			HttpGet httpGet = new HttpGet(url);
+			String etag = cached != null ? cached.etag : knownEtag;
+			String lastModified = cached != null ? cached.lastModified : knownLastModified;
+			if (etag != null)
+				httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+			if (lastModified != null)
+				httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+			ImportCancellation.Registration abort = cancellation.onCancel(httpGet::abort);
+			try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.NOT_MODIFIED.value() && cached == null && (etag != null || lastModified != null)) {
+					return null;
+				} else if (statusCode == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+					synchronized (this) {
+						if (entries.get(url) == cached) {
+							cached.acquire();
+							return cached;
+						}
+					}
+				} else {
+					HttpEntity entity = response.getEntity();
+					if (statusCode != HttpStatus.OK.value() || entity == null || entity.getContentType() == null) {
+						logger.error("{}: status code {}", url, statusCode);
+						throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file not found");
+					}
+					return store(url, response, entity, cached);
+				}
+			} catch (IOException e) {
+				cancellation.check();
+				throw e;
+			} finally {
+				abort.close();
+			}
+			//evicted while revalidating, download it again
+			return open(url, knownEtag, knownLastModified, cancellation);
+		}
+	}
+	
+	private Entry store(String url, CloseableHttpResponse response, HttpEntity entity, Entry cached) throws IOException {
+		Entry entry = new Entry();
+		entry.url = url;
+		entry.contentType = entity.getContentType().getValue();
+		entry.etag = headerValue(response, HttpHeaders.ETAG);
+		entry.lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+		entry.fileName = fileName(response);
+		
+		Path tempFile = Files.createTempFile(directory, "download-", ".tmp");
+		try {
+			MessageDigest digest = sha256();
+			try (InputStream content = new DigestInputStream(entity.getContent(), digest)) {
+				entry.size = Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			entry.sha256 = String.format("%064x", new BigInteger(1, digest.digest()));
+			//the digest tells apart versions of the same size sent without validators
+			String key = DigestUtils.md5DigestAsHex(url.getBytes(StandardCharsets.UTF_8)) + "-"
+					+ DigestUtils.md5DigestAsHex((entry.etag + "|" + entry.lastModified + "|" + entry.size + "|"
+							+ entry.sha256).getBytes(StandardCharsets.UTF_8));
+			entry.file = directory.resolve(key + ".data");
+			if (cached != null && cached.file.equals(entry.file)) {
+				synchronized (this) {
+					if (entries.get(url) == cached) {
+						//the same version was sent again, keep the cached copy
+						Files.delete(tempFile);
+						cached.stored = System.currentTimeMillis();
+						cached.acquire();
+						return cached;
+					}
+				}
+			}
+			Files.move(tempFile, entry.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			entry.stored = System.currentTimeMillis();
+			entry.lastAccess = entry.stored;
+			writeEntry(entry, directory.resolve(key + ".properties"));
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+		
+		synchronized (this) {
+			Entry previous = entries.put(url, entry);
+			totalSize += entry.size;
+			entry.acquire();
+			if (previous != null) {
+				previous.obsolete = true;
+				previous.deleteIfUnused();
+			}
+			evict();
+		}
+		logger.info("{}: stored {} bytes in the spool cache", url, entry.size);
+		return entry;
+	}
+	
+	/**
+	 * Removes the least recently used files until the cache fits its size limit.
+	 */
+	private synchronized void evict() {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && totalSize > maxSize; ) {
+			Entry entry = it.next();
+			if (entry.users == 0) {
+				it.remove();
+				entry.obsolete = true;
+				entry.deleteIfUnused();
+			}
+		}
+	}
+	
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * @return hex SHA-256 digest of the first bytes of the file
+	 */
+	static String sha256(Path file, long length) throws IOException {
+		MessageDigest digest = sha256();
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream content = Files.newInputStream(file)) {
+			for (long remaining = length; remaining > 0; ) {
+				int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (read < 0)
+					throw new EOFException(file + " is shorter than " + length + " bytes");
+				digest.update(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		return String.format("%064x", new BigInteger(1, digest.digest()));
+	}
+	
+	/**
+	 * @return file name from the Content-Disposition header
+	 */
+	static String fileName(HttpResponse response) {
+		String fileName = "unknown-file.tab";
+		Header contentDisposition = response.getFirstHeader("Content-Disposition");
+		if (contentDisposition != null) {
+			for (HeaderElement element : contentDisposition.getElements()) {
+				NameValuePair param = element.getParameterByName("filename");
+				if (param != null)
+					fileName = param.getValue();
+			}
+		}
+		return fileName;
+	}
+	
+	/**
+	 * @return true when a version of the file is stored in the cache
+	 */
+	public synchronized boolean contains(String url) {
+		return entries.containsKey(url);
+	}
+	
+	private static String headerValue(CloseableHttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
+	
+	private void writeEntry(Entry entry, Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("url", entry.url);
+		properties.setProperty("contentType", entry.contentType);
+		properties.setProperty("fileName", entry.fileName);
+		properties.setProperty("size", Long.toString(entry.size));
+		if (entry.etag != null)
+			properties.setProperty("etag", entry.etag);
+		if (entry.lastModified != null)
+			properties.setProperty("lastModified", entry.lastModified);
+		if (entry.sha256 != null)
+			properties.setProperty("sha256", entry.sha256);
+		try (Writer writer = Files.newBufferedWriter(file)) {
+			properties.store(writer, null);
+		}
+	}
+	
+	private Entry readEntry(Path propertiesFile) {
+		String fileName = propertiesFile.getFileName().toString();
+		Path dataFile = propertiesFile.resolveSibling(fileName.substring(0, fileName.length() - ".properties".length()) + ".data");
+		try {
+			if (!Files.exists(dataFile)) {
+				Files.deleteIfExists(propertiesFile);
+				return null;
+			}
+			Properties properties = new Properties();
+			try (Reader reader = Files.newBufferedReader(propertiesFile)) {
+				properties.load(reader);
+			}
+			Entry entry = new Entry();
+			entry.file = dataFile;
+			entry.url = properties.getProperty("url");
+			entry.contentType = properties.getProperty("contentType");
+			entry.fileName = properties.getProperty("fileName");
+			entry.size = Long.parseLong(properties.getProperty("size"));
+			entry.etag = properties.getProperty("etag");
+			entry.lastModified = properties.getProperty("lastModified");
+			entry.sha256 = properties.getProperty("sha256");
+			entry.stored = Files.getLastModifiedTime(dataFile).toMillis();
+			entry.lastAccess = entry.stored;
+			return entry;
+		} catch (IOException | RuntimeException e) {
+			logger.warn("skipping spool file {}: {}", dataFile, e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Cached file version, open until {@link #close()} is called.
+	 */
+	public class Entry implements Closeable {
+		private String url;
+		private Path file;
+		private String contentType;
+		private String fileName;
+		private long size;
+		private String etag;
+		private String lastModified;
+		private String sha256;
+		private long stored;
+		private long lastAccess;
+		
+		private int users;
+		private boolean obsolete;
+		private boolean deleted;
+		
+		public Path getFile() {
+			return file;
+		}
+		
+		public String getContentType() {
+			return contentType;
+		}
+		
+		public String getFileName() {
+			return fileName;
+		}
+		
+		public long getSize() {
+			return size;
+		}
+		
+		public String getEtag() {
+			return etag;
+		}
+		
+		public String getLastModified() {
+			return lastModified;
+		}
+		
+		/**
+		 * @return hex SHA-256 digest of the content, computed while downloading
+		 */
+		public String getSha256() {
+			return sha256;
+		}
+		
+		public HttpEntity getEntity() {
+			return new LocalFileEntity(file.toFile(), contentType);
+		}
+		
+		private void acquire() {
+			users++;
+			lastAccess = System.currentTimeMillis();
+		}
+		
+		private void deleteIfUnused() {
+			if (users > 0 || !obsolete || deleted)
+				return;
+			deleted = true;
+			totalSize -= size;
+			try {
+				Files.deleteIfExists(file);
+				Files.deleteIfExists(file.resolveSibling(file.getFileName().toString().replace(".data", ".properties")));
+			} catch (IOException e) {
+				logger.warn("could not delete spool file {}", file, e);
+			}
+		}
+		
+		@Override
+		public void close() {
+			synchronized (SpoolCache.this) {
+				users--;
+				deleteIfUnused();
+				evict();
+			}
+		}
+	}
+}
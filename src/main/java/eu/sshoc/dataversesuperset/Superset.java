@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
 
 import org.apache.catalina.util.URLEncoder;
 import org.apache.http.HttpHeaders;
@@ -34,13 +36,14 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -49,55 +52,66 @@ public class Superset {
 	@Autowired
 	private Map<String, String> supersetConfig;
 	
+	@Autowired
 	private CloseableHttpClient httpClient;
-	private String accessToken;
+	@Autowired
+	private SupersetTokenManager tokenManager;
 	
-	public Superset() {
-		httpClient = HttpClients.createDefault();
-	}
+	private TtlCache<String, Long> datasetIds;
+	private TtlCache<Long, Map<String, String>> chartUrls;
 	
+	@PostConstruct
+	void initCaches() {
+		int size = Integer.parseInt(supersetConfig.getOrDefault("cache-size", "1000"));
+		long ttl = DurationStyle.detectAndParse(supersetConfig.getOrDefault("cache-ttl", "60s")).toMillis();
+		long negativeTtl = DurationStyle.detectAndParse(supersetConfig.getOrDefault("cache-negative-ttl", "10s")).toMillis();
+		datasetIds = new TtlCache<>(size, ttl, negativeTtl, id -> id < 0);
+		chartUrls = new TtlCache<>(size, ttl, negativeTtl, Map::isEmpty);
+	}
 
 	public long createDataset(String tableName) throws IOException {
-		refreshToken();
-		
-		HttpPost post = post("dataset/", accessToken);
 		JSONObject json = new JSONObject();
 		json.put("database", supersetConfig.get("database-id"));
 		json.put("schema", supersetConfig.get("schema"));
 		json.put("table_name", tableName);
-		StringEntity entity = new StringEntity(json.toString(), "UTF-8");
-		entity.setContentType("application/json");
-		post.setEntity(entity);
+		String body = json.toString();
 		
-		try (CloseableHttpResponse response = httpClient.execute(post)) {
-			json = getJson(response, HttpStatus.SC_CREATED);
-			return json.getLong("id");
-		}
+		json = execute(accessToken -> {
+			HttpPost post = post("dataset/", accessToken);
+			StringEntity entity = new StringEntity(body, "UTF-8");
+			entity.setContentType("application/json");
+			post.setEntity(entity);
+			return post;
+		}, HttpStatus.SC_CREATED);
+		datasetIds.invalidate(tableName);
+		return json.getLong("id");
 	}
 	
 	public long findDataset(String tableName) throws IOException {
-		refreshToken();
-		
+		return datasetIds.get(tableName, this::loadDataset);
+	}
+	
+	public Map<String, String> findChartUrls(long datasourceId) throws IOException {
+		return chartUrls.get(datasourceId, this::loadChartUrls);
+	}
+	
+	private long loadDataset(String tableName) throws IOException {
 		JSONObject json = new JSONObject();
 		json.put("columns", new JSONArray(List.of("id")));
 		json.put("filters", new JSONArray(List.of(new JSONObject(
 				Map.of("col", "table_name",
 						"opr", "eq",
 						"value", tableName)))));
-		HttpGet get = get("dataset/?q=" + new URLEncoder().encode(json.toString(), Charset.forName("UTF-8")));
+		String path = "dataset/?q=" + new URLEncoder().encode(json.toString(), Charset.forName("UTF-8"));
 		
-		try (CloseableHttpResponse response = httpClient.execute(get)) {
-			json = getJson(response, HttpStatus.SC_OK);
-			if (json.getInt("count") == 1) {
-				return json.getJSONArray("result").getJSONObject(0).getLong("id");
-			}
-			return -1;
+		json = execute(accessToken -> get(path, accessToken), HttpStatus.SC_OK);
+		if (json.getInt("count") == 1) {
+			return json.getJSONArray("result").getJSONObject(0).getLong("id");
 		}
+		return -1;
 	}
 
-	public Map<String, String> findChartUrls(long datasourceId) throws IOException {
-		refreshToken();
-
+	private Map<String, String> loadChartUrls(long datasourceId) throws IOException {
 		JSONObject json = new JSONObject();
 		json.put("columns", new JSONArray(List.of("slice_name", "url")));
 		json.put("filters", new JSONArray(List.of(new JSONObject(
@@ -108,19 +122,16 @@ public class Superset {
 		json.put("order_direction", "desc");
 		json.put("page", 0);
 		json.put("page_size", 20);
-		HttpGet get = get("chart/?q=" + new URLEncoder().encode(json.toString(), Charset.forName("UTF-8")));
+		String path = "chart/?q=" + new URLEncoder().encode(json.toString(), Charset.forName("UTF-8"));
 
 		Map<String, String> chartToUrl = new LinkedHashMap<>();
-		try (CloseableHttpResponse response = httpClient.execute(get)) {
-			json = getJson(response, HttpStatus.SC_OK);
-			JSONArray resultArray = json.getJSONArray("result");
-			for (int i = 0; i < resultArray.length(); i++) {
-				chartToUrl.put(resultArray.getJSONObject(i).getString("slice_name"),
-						resultArray.getJSONObject(i).getString("url") + "&standalone=1");
-			}
-			return chartToUrl;
+		json = execute(accessToken -> get(path, accessToken), HttpStatus.SC_OK);
+		JSONArray resultArray = json.getJSONArray("result");
+		for (int i = 0; i < resultArray.length(); i++) {
+			chartToUrl.put(resultArray.getJSONObject(i).getString("slice_name"),
+					resultArray.getJSONObject(i).getString("url") + "&standalone=1");
 		}
-
+		return Collections.unmodifiableMap(chartToUrl);
 	}
 
 	private HttpPost post(String path, String bearer) {
@@ -130,24 +141,27 @@ public class Superset {
 		return post;
 	}
 	
-	private HttpGet get(String path) {
+	private HttpGet get(String path, String bearer) {
 		HttpGet get = new HttpGet(URI.create(supersetConfig.get("uri")).resolve("api/v1/" + path));
-		get.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+		get.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + bearer);
 		get.setHeader(HttpHeaders.ACCEPT, "application/json");
 		return get;
 	}
-
-
-	private void refreshToken() throws IOException {
-		// TODO check if current access token has expired
-		HttpPost post = post("security/refresh", supersetConfig.get("refresh-token"));
-		try (CloseableHttpResponse response = httpClient.execute(post)) {
-			JSONObject json = new JSONObject(EntityUtils.toString(response.getEntity()));
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw new IOException(
-						"refresh token problem: " + response.getStatusLine() + " " + json.get("message"));
+	
+	/**
+	 * Executes the request with the current access token, a rejected token is replaced and the request retried once.
+	 */
+	private JSONObject execute(Function<String, HttpUriRequest> request, int expectedStatus) throws IOException {
+		String accessToken = tokenManager.getAccessToken();
+		try (CloseableHttpResponse response = httpClient.execute(request.apply(accessToken))) {
+			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+				return getJson(response, expectedStatus);
 			}
-			accessToken = json.getString("access_token");
+			EntityUtils.consume(response.getEntity());
+		}
+		tokenManager.invalidate(accessToken);
+		try (CloseableHttpResponse response = httpClient.execute(request.apply(tokenManager.getAccessToken()))) {
+			return getJson(response, expectedStatus);
 		}
 	}
 
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Keeps the Superset access token. The token is refreshed shortly before its {@code exp} claim,
+ * concurrent callers wait for a single refresh instead of starting their own.
+ */
+@Component
+public class SupersetTokenManager {
+	
+	@Autowired
+	private Logger logger;
+	
+	@Autowired
+	private Map<String, String> supersetConfig;
+	
+	@Autowired
+	private CloseableHttpClient httpClient;
+	
+	private final Object refreshLock = new Object();
+	private volatile AccessToken current;
+	
+	public String getAccessToken() throws IOException {
+		AccessToken token = current;
+		if (token != null && token.isFresh())
+			return token.value;
+		synchronized (refreshLock) {
+			token = current;
+			if (token == null || !token.isFresh()) {
+				token = refresh();
+				current = token;
+			}
+			return token.value;
+		}
+	}
+	
+	/**
+	 * Drops the token after Superset rejected it, unless it was already replaced.
+	 */
+	public void invalidate(String accessToken) {
+		synchronized (refreshLock) {
+			if (current != null && current.value.equals(accessToken))
+				current = null;
+		}
+	}
+	
+	private AccessToken refresh() throws IOException {
+		HttpPost post = new HttpPost(URI.create(supersetConfig.get("uri")).resolve("api/v1/security/refresh"));
+		post.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + supersetConfig.get("refresh-token"));
+		post.setHeader(HttpHeaders.ACCEPT, "application/json");
+		try (CloseableHttpResponse response = httpClient.execute(post)) {
+			JSONObject json = new JSONObject(EntityUtils.toString(response.getEntity()));
+			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+				throw new IOException(
+						"refresh token problem: " + response.getStatusLine() + " " + json.opt("message"));
+			}
+			String value = json.getString("access_token");
+			long refreshAhead = DurationStyle.detectAndParse(
+					supersetConfig.getOrDefault("token-refresh-ahead", "60s")).toMillis();
+			return new AccessToken(value, expiresAt(value) - refreshAhead);
+		}
+	}
+	
+	/**
+	 * @return expiry time from the JWT {@code exp} claim in milliseconds
+	 */
+	private long expiresAt(String jwt) {
+		String[] parts = jwt.split("\\.");
+		if (parts.length >= 2) {
+			try {
+				JSONObject claims = new JSONObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+				if (claims.has("exp"))
+					return claims.getLong("exp") * 1000;
+			} catch (IllegalArgumentException | JSONException e) {
+				logger.warn("could not decode access token claims: {}", e.getMessage());
+			}
+		}
+		//unknown lifetime, Superset's default is 15 minutes
+		return System.currentTimeMillis() + 15 * 60 * 1000;
+	}
+	
+	private static class AccessToken {
+		final String value;
+		final long refreshAt;
+		
+		AccessToken(String value, long refreshAt) {
+			this.value = value;
+			this.refreshAt = refreshAt;
+		}
+		
+		boolean isFresh() {
+			return System.currentTimeMillis() < refreshAt;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Small LRU cache with time-based expiry. Negative results (as decided by the given predicate)
+ * can be kept for a shorter time than regular ones.
+ */
+public class TtlCache<K, V> {
+	
+	public interface Loader<K, V> {
+		V load(K key) throws IOException;
+	}
+	
+	private final long ttl;
+	private final long negativeTtl;
+	private final Predicate<V> negative;
+	private final Map<K, Entry<V>> entries;
+	
+	public TtlCache(int maxSize, long ttl, long negativeTtl, Predicate<V> negative) {
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.negative = negative;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, TtlCache.Entry<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	public V get(K key, Loader<K, V> loader) throws IOException {
+		long now = System.currentTimeMillis();
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null && entry.expiresAt > now)
+				return entry.value;
+		}
+		V value = loader.load(key);
+		long expiresAt = now + (negative.test(value) ? negativeTtl : ttl);
+		synchronized (entries) {
+			entries.put(key, new Entry<>(value, expiresAt));
+		}
+		return value;
+	}
+	
+	public void invalidate(K key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+	
+	private static class Entry<V> {
+		final V value;
+		final long expiresAt;
+		
+		Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Column type detection. Every cell is classified into all candidate types in one pass by allocation-free
+ * scanners, each column keeps a bit set of the types still possible for all of its cells. The first
+ * remaining type in {@link ColumnType} order wins.
+ */
+public final class TypeInference {
+	
+	private static final int ALL_TYPES = (1 << ColumnType.values().length) - 1;
+	private static final int TEXT_ONLY = bit(ColumnType.TEXT);
+	private static final int PARALLEL_COLUMNS = 64;
+	
+	private TypeInference() {
+	}
+	
+	public static List<ColumnType> inferTypes(List<List<String>> rows, int columnCount) {
+		IntStream columns = IntStream.range(0, columnCount);
+		if (columnCount >= PARALLEL_COLUMNS)
+			columns = columns.parallel();
+		return columns.mapToObj(column -> inferType(rows, column))
+				.collect(Collectors.toList());
+	}
+	
+	private static ColumnType inferType(List<List<String>> rows, int column) {
+		int possible = ALL_TYPES;
+		for (int i = 0; i < rows.size() && possible != TEXT_ONLY; i++) {
+			List<String> row = rows.get(i);
+			if (column < row.size()) {
+				String value = row.get(column);
+				if (value != null && value.length() > 0)
+					possible &= matchingTypes(value);
+			}
+		}
+		return ColumnType.values()[Integer.numberOfTrailingZeros(possible)];
+	}
+	
+	/**
+	 * @return bit set (by ordinal) of the types the value can be parsed as
+	 */
+	public static int matchingTypes(CharSequence value) {
+		int types = TEXT_ONLY;
+		if (isBoolean(value))
+			types |= bit(ColumnType.BOOLEAN);
+		if (isInteger(value))
+			types |= bit(ColumnType.INTEGER) | bit(ColumnType.FLOATING);
+		else if (isFloating(value))
+			types |= bit(ColumnType.FLOATING);
+		if (isDate(value))
+			types |= bit(ColumnType.DATE);
+		if (isTime(value))
+			types |= bit(ColumnType.TIME);
+		if (isDateTime(value))
+			types |= bit(ColumnType.DATETIME);
+		return types;
+	}
+	
+	public static boolean matches(CharSequence value, ColumnType type) {
+		switch (type) {
+		case BOOLEAN:
+			return isBoolean(value);
+		case INTEGER:
+			return isInteger(value);
+		case FLOATING:
+			return isFloating(value);
+		case DATE:
+			return isDate(value);
+		case TIME:
+			return isTime(value);
+		case DATETIME:
+			return isDateTime(value);
+		default:
+			return true;
+		}
+	}
+	
+	private static int bit(ColumnType type) {
+		return 1 << type.ordinal();
+	}
+	
+	public static boolean isBoolean(CharSequence value) {
+		return equalsIgnoreCase(value, "true") || equalsIgnoreCase(value, "false");
+	}
+	
+	private static boolean equalsIgnoreCase(CharSequence value, String expected) {
+		if (value.length() != expected.length())
+			return false;
+		for (int i = 0; i < expected.length(); i++) {
+			if (Character.toLowerCase(value.charAt(i)) != expected.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Optional sign followed by digits, within the {@code long} range.
+	 */
+	public static boolean isInteger(CharSequence value) {
+		int length = value.length();
+		int i = 0;
+		long limit = -Long.MAX_VALUE;
+		if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+			if (value.charAt(0) == '-')
+				limit = Long.MIN_VALUE;
+			i++;
+		}
+		if (i == length)
+			return false;
+		//accumulated negatively to cover Long.MIN_VALUE
+		long result = 0;
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+			if (result < limit / 10)
+				return false;
+			result *= 10;
+			if (result < limit + (c - '0'))
+				return false;
+			result -= c - '0';
+		}
+		return true;
+	}
+	
+	/**
+	 * Decimal number with an optional fraction and exponent.
+	 */
+	public static boolean isFloating(CharSequence value) {
+		int length = value.length();
+		int i = 0;
+		if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+			i++;
+		int digits = 0;
+		for (; i < length && isDigit(value.charAt(i)); i++)
+			digits++;
+		if (i < length && value.charAt(i) == '.') {
+			for (i++; i < length && isDigit(value.charAt(i)); i++)
+				digits++;
+		}
+		if (digits == 0)
+			return false;
+		if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+			i++;
+			if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+				i++;
+			int exponentDigits = 0;
+			for (; i < length && isDigit(value.charAt(i)); i++)
+				exponentDigits++;
+			if (exponentDigits == 0)
+				return false;
+		}
+		return i == length;
+	}
+	
+	/**
+	 * {@code yyyy-[m]m-[d]d}, as accepted by {@link java.sql.Date#valueOf(String)}.
+	 */
+	public static boolean isDate(CharSequence value) {
+		return scanDate(value) == value.length();
+	}
+	
+	/**
+	 * {@code hh:mm:ss}
+	 */
+	public static boolean isTime(CharSequence value) {
+		return scanTime(value, 0) == value.length();
+	}
+	
+	/**
+	 * {@code yyyy-[m]m-[d]d hh:mm:ss[.f...]}, as accepted by {@link java.sql.Timestamp#valueOf(String)}.
+	 */
+	public static boolean isDateTime(CharSequence value) {
+		int i = scanDate(value);
+		if (i < 0 || i >= value.length() || value.charAt(i) != ' ')
+			return false;
+		i = scanTime(value, i + 1);
+		if (i < 0)
+			return false;
+		if (i < value.length() && value.charAt(i) == '.') {
+			int fractionStart = ++i;
+			while (i < value.length() && isDigit(value.charAt(i)))
+				i++;
+			int fractionDigits = i - fractionStart;
+			if (fractionDigits == 0 || fractionDigits > 9)
+				return false;
+		}
+		return i == value.length();
+	}
+	
+	/**
+	 * @return index after the date, or -1 when the value does not start with a date
+	 */
+	private static int scanDate(CharSequence value) {
+		int length = value.length();
+		if (length < 8)
+			return -1;
+		for (int i = 0; i < 4; i++) {
+			if (!isDigit(value.charAt(i)))
+				return -1;
+		}
+		if (value.charAt(4) != '-')
+			return -1;
+		int i = 5;
+		int month = 0;
+		int start = i;
+		for (; i < length && i - start < 2 && isDigit(value.charAt(i)); i++)
+			month = month * 10 + (value.charAt(i) - '0');
+		if (i == start || i >= length || value.charAt(i) != '-' || month < 1 || month > 12)
+			return -1;
+		int day = 0;
+		start = ++i;
+		for (; i < length && i - start < 2 && isDigit(value.charAt(i)); i++)
+			day = day * 10 + (value.charAt(i) - '0');
+		if (i == start || day < 1 || day > 31)
+			return -1;
+		return i;
+	}
+	
+	/**
+	 * @return index after the time, or -1 when there is no time at the given position
+	 */
+	private static int scanTime(CharSequence value, int start) {
+		int length = value.length();
+		int i = start;
+		int hour = 0;
+		for (; i < length && i - start < 2 && isDigit(value.charAt(i)); i++)
+			hour = hour * 10 + (value.charAt(i) - '0');
+		if (i == start || hour > 23)
+			return -1;
+		for (int part = 0; part < 2; part++) {
+			if (i + 3 > length || value.charAt(i) != ':' || !isDigit(value.charAt(i + 1)) || !isDigit(value.charAt(i + 2)))
+				return -1;
+			if ((value.charAt(i + 1) - '0') * 10 + (value.charAt(i + 2) - '0') > 59)
+				return -1;
+			i += 3;
+		}
+		return i;
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
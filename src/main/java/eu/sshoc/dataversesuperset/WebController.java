@@ -26,8 +26,6 @@ package eu.sshoc.dataversesuperset;
 import eu.sshoc.dataversesuperset.DataInfo.Status;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -55,11 +53,13 @@ public class WebController {
 	@Autowired
 	private DataLoader dataLoader;
 	@Autowired
-	private DataSaver dataSaver;
-	@Autowired
 	private Superset superset;
 	@Autowired
-	private ApplicationContext appContext;
+	private ImportJobs importJobs;
+	@Autowired
+	private ImportRegistry importRegistry;
+	@Autowired
+	private ImportWorker importWorker;
 	
 	@GetMapping("/dataverse-superset")
 	public String displayCsv(Model model, HttpSession session,
@@ -84,18 +84,30 @@ public class WebController {
 		}
 		
 		String name = DataInfo.getName(fileUrl);
-		DataInfo dataInfo = sessionDataInfos.get(name);
 		long datasetId = superset.findDataset(name);
-		if (dataInfo == null) {
-			dataInfo = new DataInfo(siteUrl, fileId, fileUrl);
-			if (datasetId >= 0) {
-				dataInfo.datasetId = datasetId;
-				dataInfo.status = Status.COMPLETE;
-				model.addAttribute("chartToUrl", superset.findChartUrls(datasetId));
-			}
-			dataLoader.loadMetadata(dataInfo);
+		//sessions importing the same file share the data and its status
+		DataInfo dataInfo = importRegistry.find(name);
+		if (dataInfo != null) {
 			sessionDataInfos.put(name, dataInfo);
+		} else {
+			dataInfo = sessionDataInfos.get(name);
+			if (dataInfo == null) {
+				dataInfo = new DataInfo(siteUrl, fileId, fileUrl);
+				if (datasetId >= 0) {
+					dataInfo.datasetId = datasetId;
+					dataInfo.status = Status.COMPLETE;
+				}
+				dataLoader.loadMetadata(dataInfo);
+				sessionDataInfos.put(name, dataInfo);
+			}
+			
+			//the import may run on another instance
+			ImportJobs.Job job = importJobs.find(name);
+			if (job != null && job.isActive())
+				job.applyTo(dataInfo);
 		}
+		if (dataInfo.status == Status.COMPLETE)
+			datasetId = dataInfo.datasetId;
 
 		if (datasetId >= 0) {
 			model.addAttribute("chartToUrl", superset.findChartUrls(datasetId));
@@ -111,28 +123,27 @@ public class WebController {
 			@RequestParam String datasetName) {
 		@SuppressWarnings("unchecked")
 		Map<String, DataInfo> sessionDataInfos = (Map<String, DataInfo>) session.getAttribute("dataInfos");
-		DataInfo dataInfo = sessionDataInfos.get(datasetName);
-		dataInfo.status = Status.IN_PROGRESS;
-		appContext.getBean(WebController.class).importCsvAsync(dataInfo);
+		DataInfo dataInfo = importRegistry.start(sessionDataInfos.get(datasetName));
+		sessionDataInfos.put(datasetName, dataInfo);
 		redirectAttributes.addAttribute("siteUrl", dataInfo.siteUrl);
 		redirectAttributes.addAttribute("fileid", dataInfo.fileId);
 		redirectAttributes.addAttribute("fileUrl", dataInfo.fileUrl);
 		return "redirect:/dataverse-superset";
 	}
 	
-	@Async
-	public void importCsvAsync(DataInfo dataInfo) {
-		String tableName = null;
-		try {
-			tableName = dataSaver.createTable(dataInfo);
-			dataInfo.datasetId = superset.createDataset(tableName);
-			dataInfo.status = Status.COMPLETE;
-		} catch (Exception e) {
-			logger.error("could not load " + dataInfo.fileUrl, e);
-			dataInfo.error = e.getMessage();
-			dataInfo.status = Status.ERROR;
-			if (tableName != null)
-				dataSaver.deleteTable(tableName);
-		}
+	@PostMapping("/dataverse-superset/cancel")
+	public String cancelImport(HttpSession session, RedirectAttributes redirectAttributes,
+			@RequestParam String datasetName) {
+		@SuppressWarnings("unchecked")
+		Map<String, DataInfo> sessionDataInfos = (Map<String, DataInfo>) session.getAttribute("dataInfos");
+		DataInfo dataInfo = sessionDataInfos == null ? null : sessionDataInfos.get(datasetName);
+		if (dataInfo == null)
+			throw new ResponseStatusException(BAD_REQUEST);
+		if (!importWorker.cancel(datasetName))
+			logger.info("{}: no import to cancel", datasetName);
+		redirectAttributes.addAttribute("siteUrl", dataInfo.siteUrl);
+		redirectAttributes.addAttribute("fileid", dataInfo.fileId);
+		redirectAttributes.addAttribute("fileUrl", dataInfo.fileUrl);
+		return "redirect:/dataverse-superset";
 	}
 }
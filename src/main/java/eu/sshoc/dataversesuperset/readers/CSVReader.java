@@ -33,6 +33,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -65,11 +66,11 @@ public class CSVReader extends Reader {
 	protected void initIterator() throws IOException {
 		String contentType = entity.getContentType().getValue();
 		if (contentType.startsWith("text/tab-separated-values")) {
-			csvParser = CSVFormat.TDF.withFirstRecordAsHeader().parse(new InputStreamReader(entity.getContent()));
+			csvParser = CSVFormat.TDF.withFirstRecordAsHeader().parse(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8));
 		} else if (contentType.startsWith("text/comma-separated-values")) {
-			csvParser = CSVFormat.EXCEL.withFirstRecordAsHeader().parse(new InputStreamReader(entity.getContent()));
+			csvParser = CSVFormat.EXCEL.withFirstRecordAsHeader().parse(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8));
 		} else if (contentType.startsWith("text/semicolon-separated-values")) {
-			csvParser = CSVFormat.EXCEL.withDelimiter(';').withFirstRecordAsHeader().parse(new InputStreamReader(entity.getContent()));
+			csvParser = CSVFormat.EXCEL.withDelimiter(';').withFirstRecordAsHeader().parse(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8));
 		} else {
 			logger.warn("received content type: {}", contentType);
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "file not valid");
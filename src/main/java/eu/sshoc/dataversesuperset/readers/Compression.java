@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 SSHOC Dataverse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Compression formats of uploaded files, detected by content type, file name or magic bytes.
+ * The content is decompressed while it is read, nothing is expanded up front.
+ */
+enum Compression {
+	
+	GZIP(".gz", List.of("application/gzip", "application/x-gzip"), new byte[] {0x1f, (byte) 0x8b}),
+	ZIP(".zip", List.of("application/zip", "application/x-zip-compressed"), new byte[] {'P', 'K', 3, 4}),
+	BZIP2(".bz2", List.of("application/x-bzip2", "application/x-bzip"), new byte[] {'B', 'Z', 'h'});
+	
+	private static final int SNIFF_SIZE = 1 << 16;
+	
+	private final String suffix;
+	private final List<String> contentTypes;
+	private final byte[] magic;
+	
+	Compression(String suffix, List<String> contentTypes, byte[] magic) {
+		this.suffix = suffix;
+		this.contentTypes = contentTypes;
+		this.magic = magic;
+	}
+	
+	static boolean isCompressed(String contentType, String fileName) {
+		String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+		return Arrays.stream(values()).anyMatch(c -> c.contentTypes.stream().anyMatch(contentType::startsWith)
+				|| name.endsWith(c.suffix));
+	}
+	
+	/**
+	 * @return compression of the entity content, or null for plain content
+	 */
+	static Compression detect(HttpEntity entity, String fileName) throws IOException {
+		String contentType = entity.getContentType().getValue();
+		String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+		for (Compression compression : values()) {
+			if (compression.contentTypes.stream().anyMatch(contentType::startsWith) || name.endsWith(compression.suffix))
+				return compression;
+		}
+		//generic content types may hide compressed files, the content can be checked when it is readable twice;
+		//known formats are left alone, spreadsheets in .xlsx and .ods are zip archives themselves
+		if (!entity.isRepeatable() || Reader.isSupported(contentType, name) || contentTypeByName(name) != null)
+			return null;
+		byte[] head = new byte[4];
+		int length;
+		try (InputStream content = entity.getContent()) {
+			length = content.readNBytes(head, 0, head.length);
+		}
+		for (Compression compression : values()) {
+			if (length >= compression.magic.length
+					&& Arrays.equals(head, 0, compression.magic.length, compression.magic, 0, compression.magic.length))
+				return compression;
+		}
+		return null;
+	}
+	
+	/**
+	 * Opens the decompressed content, for zip archives the first entry in a readable format.
+	 * @return entity streaming the content, typed by the name of the compressed file
+	 */
+	Content open(HttpEntity entity, String fileName) throws IOException {
+		InputStream content = entity.getContent();
+		try {
+			String name = fileName == null ? "" : fileName;
+			InputStream decompressed;
+			switch (this) {
+			case GZIP:
+				decompressed = new GZIPInputStream(content, SNIFF_SIZE);
+				name = stripSuffix(name);
+				break;
+			case BZIP2:
+				decompressed = new BZip2CompressorInputStream(content, true);
+				name = stripSuffix(name);
+				break;
+			default:
+				ZipInputStream zip = new ZipInputStream(content);
+				ZipEntry zipEntry;
+				do {
+					zipEntry = zip.getNextEntry();
+				} while (zipEntry != null && !isReadableEntry(zipEntry));
+				if (zipEntry == null)
+					throw new IOException("no readable file in the archive");
+				decompressed = zip;
+				name = zipEntry.getName().substring(zipEntry.getName().lastIndexOf('/') + 1);
+			}
+			BufferedInputStream buffered = new BufferedInputStream(decompressed, SNIFF_SIZE);
+			String contentType = contentType(name, buffered);
+			InputStreamEntity inner = new InputStreamEntity(buffered);
+			inner.setContentType(contentType);
+			return new Content(inner, name);
+		} catch (IOException | RuntimeException e) {
+			content.close();
+			throw e;
+		}
+	}
+	
+	private String stripSuffix(String name) {
+		return name.toLowerCase(Locale.ROOT).endsWith(suffix) ? name.substring(0, name.length() - suffix.length()) : name;
+	}
+	
+	private static boolean isReadableEntry(ZipEntry entry) {
+		String name = entry.getName();
+		String baseName = name.substring(name.lastIndexOf('/') + 1);
+		return !entry.isDirectory() && !name.startsWith("__MACOSX/") && !baseName.startsWith(".")
+				&& contentTypeByName(baseName) != null;
+	}
+	
+	private static String contentTypeByName(String name) {
+		String lowerName = name.toLowerCase(Locale.ROOT);
+		if (lowerName.endsWith(".tab") || lowerName.endsWith(".tsv"))
+			return "text/tab-separated-values";
+		if (lowerName.endsWith(".csv"))
+			return "text/comma-separated-values";
+		if (lowerName.endsWith(".xlsx"))
+			return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+		if (lowerName.endsWith(".xls"))
+			return "application/vnd.ms-excel";
+		if (lowerName.endsWith(".ods"))
+			return "application/ods";
+		return null;
+	}
+	
+	/**
+	 * Types the content by its name, files without a known extension are read as delimited text
+	 * with the separator that is most frequent in the first line.
+	 */
+	private static String contentType(String name, BufferedInputStream content) throws IOException {
+		String contentType = contentTypeByName(name);
+		if (contentType != null)
+			return contentType;
+		content.mark(SNIFF_SIZE);
+		int tabs = 0, commas = 0, semicolons = 0;
+		for (int i = 0, b = content.read(); i < SNIFF_SIZE && b >= 0 && b != '\n'; i++, b = content.read()) {
+			if (b == '\t')
+				tabs++;
+			else if (b == ',')
+				commas++;
+			else if (b == ';')
+				semicolons++;
+		}
+		content.reset();
+		if (semicolons > commas && semicolons > tabs)
+			return "text/semicolon-separated-values";
+		return commas > tabs ? "text/comma-separated-values" : "text/tab-separated-values";
+	}
+	
+	/**
+	 * Decompressed entity with the name of the file inside.
+	 */
+	static class Content {
+		final HttpEntity entity;
+		final String name;
+		
+		Content(HttpEntity entity, String name) {
+			this.entity = entity;
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 SSHOC Dataverse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import eu.sshoc.dataversesuperset.DataInfo;
+import org.apache.http.HttpEntity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Tokenizes locally stored UTF-8 delimited files directly over memory mapped bytes, following the
+ * commons-csv formats used by {@link CSVReader}: optional double quotes with {@code ""} escapes,
+ * for tab separated files also surrounding spaces ignored and empty lines skipped.
+ * Cells are returned as {@link Utf8Slice} views, only quoted cells containing escapes are copied.
+ * <p>
+ * Besides the sequential iteration the data can be {@link #split split} at record boundaries
+ * and the parts read independently with {@link #cursor(long, long)}.
+ */
+public class DelimitedReader extends Reader {
+	
+	private static final int WINDOW_SIZE = 1 << 28;
+	
+	private final byte delimiter;
+	private final boolean tabSeparated;
+	private final RecordScanner scanner;
+	
+	private FileChannel channel;
+	private long fileSize;
+	private long dataStart;
+	private Cursor cursor;
+	private List<Utf8Slice> nextRecord;
+	
+	protected DelimitedReader(DataInfo dataInfo, HttpEntity entity, char delimiter) {
+		super(dataInfo, entity);
+		this.delimiter = (byte) delimiter;
+		this.tabSeparated = delimiter == '\t';
+		this.scanner = new RecordScanner(delimiter);
+	}
+	
+	@Override
+	protected void initIterator() throws IOException {
+		channel = FileChannel.open(((LocalFileEntity) entity).getFile().toPath(), StandardOpenOption.READ);
+		fileSize = channel.size();
+		cursor = new Cursor(0, fileSize, WINDOW_SIZE);
+		cursor.skipByteOrderMark();
+		List<Utf8Slice> header = cursor.next(Integer.MAX_VALUE);
+		if (header != null) {
+			for (Utf8Slice name : header) {
+				columns.add(name.toString());
+			}
+		}
+		dataStart = cursor.offset();
+		nextRecord = cursor.next(columns.size());
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return nextRecord != null;
+	}
+	
+	@Override
+	public List<String> next() {
+		List<? extends CharSequence> fields = nextFields();
+		List<String> cells = new ArrayList<>(fields.size());
+		for (CharSequence field : fields) {
+			cells.add(field.toString());
+		}
+		return cells;
+	}
+	
+	@Override
+	public List<? extends CharSequence> nextFields() {
+		if (nextRecord == null)
+			throw new NoSuchElementException();
+		List<Utf8Slice> record = nextRecord;
+		try {
+			nextRecord = cursor.next(columns.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return record;
+	}
+	
+	/**
+	 * @return position of the first record after the header
+	 */
+	public long getDataStart() {
+		return dataStart;
+	}
+	
+	/**
+	 * @return size in bytes of the records after the header
+	 */
+	public long getDataSize() {
+		return fileSize - dataStart;
+	}
+	
+	public long getFileSize() {
+		return fileSize;
+	}
+	
+	/**
+	 * Splits the records between the given record boundaries into parts of roughly the given size.
+	 * Whether a line break after a target offset ends a record depends on the quoting state there, which is
+	 * found exactly, as the tokenizer sees it: each range is scanned in parallel from every possible state,
+	 * then the resulting state transitions are chained from the start.
+	 * @return ascending part boundaries, from the start to the end
+	 */
+	public long[] split(long start, long end, long partSize, ForkJoinPool pool) throws IOException {
+		int parts = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 1, (end - start) / partSize));
+		long[] targets = LongStream.rangeClosed(0, parts)
+				.map(i -> i == parts ? end : start + i * partSize).toArray();
+		long[] transitions = submit(pool, IntStream.range(0, parts)
+				.mapToLong(i -> transitions(targets[i], targets[i + 1])));
+		int[] states = new int[parts];
+		states[0] = RecordScanner.FIELD_START;
+		for (int i = 1; i < parts; i++) {
+			states[i] = (int) (transitions[i - 1] >>> (states[i - 1] * 8)) & 0xff;
+		}
+		long[] boundaries = submit(pool, IntStream.rangeClosed(0, parts)
+				.mapToLong(i -> i == 0 || i == parts ? targets[i] : nextRecordStart(targets[i], end, states[i])));
+		for (int i = 1; i < boundaries.length; i++) {
+			boundaries[i] = Math.min(Math.max(boundaries[i], boundaries[i - 1]), end);
+		}
+		return boundaries;
+	}
+	
+	private static long[] submit(ForkJoinPool pool, LongStream tasks) throws IOException {
+		try {
+			return pool.submit(() -> tasks.parallel().toArray()).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("split interrupted", e);
+		} catch (Exception e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * @return the end state of the range for each start state, packed by bytes
+	 */
+	private long transitions(long start, long end) {
+		int[] states = new int[RecordScanner.STATES];
+		for (int s = 0; s < RecordScanner.STATES; s++) {
+			states[s] = s;
+		}
+		for (long offset = start; offset < end; ) {
+			ByteBuffer buffer = map(offset, Math.min(WINDOW_SIZE, end - offset));
+			for (int i = 0; i < buffer.limit(); i++) {
+				byte b = buffer.get(i);
+				for (int s = 0; s < RecordScanner.STATES; s++) {
+					states[s] = scanner.next(states[s], b);
+				}
+			}
+			offset += buffer.limit();
+		}
+		long packed = 0;
+		for (int s = 0; s < RecordScanner.STATES; s++) {
+			packed |= (long) states[s] << (s * 8);
+		}
+		return packed;
+	}
+	
+	/**
+	 * @return position after the first line break ending a record at or after the given position
+	 */
+	private long nextRecordStart(long start, long end, int state) {
+		while (start < end) {
+			ByteBuffer buffer = map(start, Math.min(WINDOW_SIZE, end - start));
+			for (int i = 0; i < buffer.limit(); i++) {
+				byte b = buffer.get(i);
+				if (RecordScanner.endsRecord(state, b))
+					return start + i + 1;
+				state = scanner.next(state, b);
+			}
+			start += buffer.limit();
+		}
+		return end;
+	}
+	
+	private ByteBuffer map(long start, long size) {
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, fileSize - start));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Reads the records between two boundaries returned by {@link #split}.
+	 */
+	public Cursor cursor(long start, long end) {
+		return cursor(start, end, end - start);
+	}
+	
+	Cursor cursor(long start, long end, long windowSize) {
+		return new Cursor(start, end, windowSize);
+	}
+	
+	/**
+	 * Iterates records in a byte range, mapping it in windows. Records crossing a window are remapped from their start.
+	 */
+	public class Cursor {
+		
+		private final long end;
+		private final long windowSize;
+		private ByteBuffer window;
+		private long windowStart;
+		private int position;
+		
+		private Cursor(long start, long end, long windowSize) {
+			this.end = end;
+			this.windowSize = Math.max(1, Math.min(windowSize, Integer.MAX_VALUE));
+			window = ByteBuffer.allocate(0);
+			windowStart = start;
+		}
+		
+		private void skipByteOrderMark() throws IOException {
+			remap(windowSize);
+			if (window.limit() >= 3 && (window.get(0) & 0xff) == 0xef && (window.get(1) & 0xff) == 0xbb
+					&& (window.get(2) & 0xff) == 0xbf) {
+				position = 3;
+			}
+		}
+		
+		private long offset() {
+			return windowStart + position;
+		}
+		
+		private boolean isLastWindow() {
+			return windowStart + window.limit() == end;
+		}
+		
+		private void remap(long size) throws IOException {
+			windowStart += position;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size, end - windowStart));
+			position = 0;
+		}
+		
+		public List<Utf8Slice> next() throws IOException {
+			return next(columns.size());
+		}
+		
+		/**
+		 * @return the next record, at most {@code maxFields} cells, or null at the end of the range
+		 */
+		private List<Utf8Slice> next(int maxFields) throws IOException {
+			while (true) {
+				if (position == window.limit()) {
+					if (isLastWindow())
+						return null;
+					remap(windowSize);
+				}
+				List<Utf8Slice> fields = new ArrayList<>();
+				int recordEnd = scanRecord(fields, maxFields);
+				if (recordEnd < 0) {
+					//the record continues after the mapped window
+					remap(position == 0 ? (long) window.limit() * 2 : windowSize);
+					continue;
+				}
+				boolean empty = recordEnd == position;
+				position = skipLineBreak(recordEnd);
+				//empty lines are records in the comma separated formats
+				if (!empty || !tabSeparated)
+					return fields;
+			}
+		}
+		
+		/**
+		 * Scans one record starting at the current position.
+		 * @return index of the line break ending the record, or -1 when the window ends inside the record
+		 */
+		private int scanRecord(List<Utf8Slice> fields, int maxFields) throws IOException {
+			int limit = window.limit();
+			boolean last = isLastWindow();
+			int i = position;
+			while (true) {
+				while (tabSeparated && i < limit && isSpace(window.get(i)))
+					i++;
+				if (i < limit && window.get(i) == '"') {
+					int start = ++i;
+					boolean escaped = false;
+					while (true) {
+						if (i >= limit && last)
+							throw new IOException("end of data reached inside the quoted field at position " + (windowStart + start - 1));
+						if (i >= limit)
+							return -1;
+						if (window.get(i) == '"') {
+							if (i + 1 < limit && window.get(i + 1) == '"') {
+								escaped = true;
+								i += 2;
+							} else if (i + 1 == limit && !last) {
+								return -1;
+							} else {
+								break;
+							}
+						} else {
+							i++;
+						}
+					}
+					if (fields.size() < maxFields)
+						fields.add(escaped ? unescape(start, i) : new Utf8Slice(window, start, i - start));
+					i++;
+					while (i < limit && !isDelimiter(window.get(i)))
+						i++;
+				} else {
+					int start = i;
+					while (i < limit && !isDelimiter(window.get(i)))
+						i++;
+					int fieldEnd = i;
+					while (tabSeparated && fieldEnd > start && isSpace(window.get(fieldEnd - 1)))
+						fieldEnd--;
+					if (fields.size() < maxFields)
+						fields.add(new Utf8Slice(window, start, fieldEnd - start));
+				}
+				if (i == limit)
+					return last ? i : -1;
+				if (window.get(i) == '\r' && i + 1 == limit && !last)
+					return -1; //the line feed may follow in the next window
+				if (window.get(i) != delimiter)
+					return i;
+				i++;
+			}
+		}
+		
+		private int skipLineBreak(int i) {
+			int limit = window.limit();
+			if (i < limit && window.get(i) == '\r')
+				i++;
+			if (i < limit && window.get(i) == '\n')
+				i++;
+			return i;
+		}
+		
+		private Utf8Slice unescape(int start, int end) {
+			byte[] bytes = new byte[end - start];
+			int length = 0;
+			for (int i = start; i < end; i++) {
+				bytes[length++] = window.get(i);
+				if (window.get(i) == '"')
+					i++;
+			}
+			return new Utf8Slice(ByteBuffer.wrap(bytes), 0, length);
+		}
+	}
+	
+	private boolean isDelimiter(byte b) {
+		return scanner.isDelimiter(b);
+	}
+	
+	private static boolean isSpace(byte b) {
+		return RecordScanner.isSpace(b);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+}
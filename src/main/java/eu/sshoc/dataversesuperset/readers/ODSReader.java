@@ -1,18 +1,18 @@
 /*
  * The MIT License
- *
+ * 
  * Copyright (c) 2021 SSHOC Dataverse
- *
+ * 
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
  * in the Software without restriction, including without limitation the rights
  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
  * copies of the Software, and to permit persons to whom the Software is
  * furnished to do so, subject to the following conditions:
- *
+ * 
  * The above copyright notice and this permission notice shall be included in
  * all copies or substantial portions of the Software.
- *
+ * 
  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
@@ -25,21 +25,45 @@ package eu.sshoc.dataversesuperset.readers;
 
 import eu.sshoc.dataversesuperset.DataInfo;
 import org.apache.http.HttpEntity;
-import org.jopendocument.dom.ODPackage;
-import org.jopendocument.dom.ODValueType;
-import org.jopendocument.dom.spreadsheet.MutableCell;
-import org.jopendocument.dom.spreadsheet.SpreadSheet;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+/**
+ * Streaming reader of the first table of an .ods document. {@code content.xml} is unzipped
+ * from the stream and pulled row by row, repeated rows are returned repeatedly instead of being expanded.
+ */
 public class ODSReader extends Reader {
 	
-	private static final int SHEET_NUMBER = 0;
+	private static final String OFFICE_NS = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+	private static final String TABLE_NS = "urn:oasis:names:tc:opendocument:xmlns:table:1.0";
+	private static final String TEXT_NS = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+	private static final int MAX_COLUMNS = 16384;
+	
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+	
+	static {
+		//workbooks are uploaded by users, no DTDs or external entities are resolved
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	private ZipInputStream zip;
+	private XMLStreamReader xml;
+	private boolean tableEnded;
 	
-	private SpreadSheet spreadsheet;
-	private int nRowIndex;
+	private List<String> currentRow;
+	private long currentRowRepeat;
 	
 	protected ODSReader(DataInfo dataInfo, HttpEntity entity) {
 		super(dataInfo, entity);
@@ -47,41 +71,179 @@ public class ODSReader extends Reader {
 	
 	@Override
 	public boolean hasNext() {
-		return !spreadsheet.getSheet(SHEET_NUMBER).getCellAt(0, nRowIndex).isEmpty();
+		if (currentRowRepeat == 0) {
+			try {
+				currentRow = readRow(columns.size());
+			} catch (XMLStreamException e) {
+				throw new UncheckedIOException(new IOException("invalid ods content", e));
+			}
+		}
+		//the first empty row ends the data
+		return currentRow != null && !currentRow.isEmpty() && !currentRow.get(0).isEmpty();
 	}
 	
 	@Override
 	public List<String> next() {
-		List<String> cells = new ArrayList<>();
-		for (int i = 0; i < columns.size(); i++) {
-			MutableCell<?> cell = spreadsheet.getSheet(SHEET_NUMBER).getCellAt(i, nRowIndex);
-			if (!cell.isEmpty())
-				cells.add(getCellValue(cell));
-		}
-		nRowIndex++;
-		return cells;
+		if (!hasNext())
+			throw new NoSuchElementException();
+		currentRowRepeat--;
+		return currentRow;
 	}
 	
 	@Override
 	protected void initIterator() throws IOException {
-		spreadsheet = new ODPackage(entity.getContent()).getSpreadSheet();
+		zip = new ZipInputStream(entity.getContent());
+		ZipEntry zipEntry;
+		do {
+			zipEntry = zip.getNextEntry();
+		} while (zipEntry != null && !"content.xml".equals(zipEntry.getName()));
+		if (zipEntry == null)
+			throw new IOException("content.xml not found in ods file");
+		
+		try {
+			xml = XML_INPUT_FACTORY.createXMLStreamReader(zip);
+			while (xml.hasNext()) {
+				if (xml.next() == XMLStreamConstants.START_ELEMENT && isElement(TABLE_NS, "table"))
+					break;
+			}
+			
+			//first row - column names
+			List<String> header = readRow(MAX_COLUMNS);
+			if (header != null) {
+				for (String name : header) {
+					if (name.isEmpty())
+						break;
+					columns.add(name);
+				}
+			}
+			currentRowRepeat = 0;
+		} catch (XMLStreamException e) {
+			throw new IOException("invalid ods content", e);
+		}
+	}
+	
+	/**
+	 * Reads the next row of the table and sets its repeat count.
+	 * @return cells of the row, or null after the end of the table
+	 */
+	private List<String> readRow(int columnLimit) throws XMLStreamException {
+		currentRowRepeat = 0;
+		while (!tableEnded && xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT && isElement(TABLE_NS, "table-row"))
+				break;
+			if (event == XMLStreamConstants.END_ELEMENT && isElement(TABLE_NS, "table"))
+				tableEnded = true;
+		}
+		if (tableEnded || !xml.hasNext())
+			return null;
+		currentRowRepeat = repeatCount("number-rows-repeated");
 		
-		//first row - column names
-		for (int nColIndex = 0; ; nColIndex++) {
-			MutableCell<?> cell = spreadsheet.getSheet(SHEET_NUMBER).getCellAt(nColIndex, 0);
-			if (cell.isEmpty())
+		List<String> cells = new ArrayList<>();
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.END_ELEMENT && isElement(TABLE_NS, "table-row"))
 				break;
-			columns.add(nColIndex, getCellValue(cell));
+			if (event == XMLStreamConstants.START_ELEMENT
+					&& (isElement(TABLE_NS, "table-cell") || isElement(TABLE_NS, "covered-table-cell"))) {
+				long repeat = repeatCount("number-columns-repeated");
+				String value = readCellValue();
+				for (long i = 0; i < repeat && cells.size() < columnLimit; i++) {
+					cells.add(value);
+				}
+			}
 		}
-		nRowIndex = 1;
+		if (columnLimit < MAX_COLUMNS && cells.size() < columnLimit)
+			cells.addAll(Collections.nCopies(columnLimit - cells.size(), ""));
+		return cells;
+	}
+	
+	/**
+	 * Reads the cell value and skips to the end of the cell element.
+	 */
+	private String readCellValue() throws XMLStreamException {
+		String valueType = xml.getAttributeValue(OFFICE_NS, "value-type");
+		String value = null;
+		if (valueType != null) {
+			switch (valueType) {
+			case "float":
+			case "percentage":
+			case "currency":
+				value = xml.getAttributeValue(OFFICE_NS, "value");
+				break;
+			case "date":
+				value = xml.getAttributeValue(OFFICE_NS, "date-value");
+				break;
+			case "time":
+				value = xml.getAttributeValue(OFFICE_NS, "time-value");
+				break;
+			case "boolean":
+				value = xml.getAttributeValue(OFFICE_NS, "boolean-value");
+				break;
+			default:
+				value = xml.getAttributeValue(OFFICE_NS, "string-value");
+			}
+		}
+		
+		StringBuilder text = new StringBuilder();
+		int paragraphs = 0;
+		for (int depth = 1; depth > 0; ) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				if (isElement(OFFICE_NS, "annotation")) {
+					skipElement();
+					depth--;
+				} else if (isElement(TEXT_NS, "p") && paragraphs++ > 0) {
+					text.append('\n');
+				} else if (isElement(TEXT_NS, "s")) {
+					String count = xml.getAttributeValue(TEXT_NS, "c");
+					text.append(" ".repeat(count == null ? 1 : Integer.parseInt(count)));
+				} else if (isElement(TEXT_NS, "tab")) {
+					text.append('\t');
+				} else if (isElement(TEXT_NS, "line-break")) {
+					text.append('\n');
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				text.append(xml.getText());
+			}
+		}
+		if (value != null)
+			return value;
+		return valueType == null ? "" : text.toString();
+	}
+	
+	private void skipElement() throws XMLStreamException {
+		for (int depth = 1; depth > 0; ) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+	
+	private long repeatCount(String attribute) {
+		String repeat = xml.getAttributeValue(TABLE_NS, attribute);
+		return repeat == null ? 1 : Long.parseLong(repeat);
 	}
 	
-	private static String getCellValue(MutableCell<?> cell) {
-		return ODValueType.forObject(cell.getValue()).format(cell.getValue());
+	private boolean isElement(String namespace, String localName) {
+		return localName.equals(xml.getLocalName()) && namespace.equals(xml.getNamespaceURI());
 	}
 	
 	@Override
-	public void close() {
-		//don't need to close anything
+	public void close() throws IOException {
+		try {
+			if (xml != null)
+				xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			if (zip != null)
+				zip.close();
+		}
 	}
 }
@@ -32,7 +32,13 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.stream.Stream;
 
 public abstract class Reader implements Iterator<List<String>>, Closeable {
 	
@@ -44,6 +50,8 @@ public abstract class Reader implements Iterator<List<String>>, Closeable {
 	
 	protected List<String> columns = new ArrayList<>();
 	
+	private Path localFile;
+	
 	protected Reader(DataInfo dataInfo, HttpEntity entity) {
 		this.entity = entity;
 		this.dataInfo = dataInfo;
@@ -55,16 +63,72 @@ public abstract class Reader implements Iterator<List<String>>, Closeable {
 	private static final Set<String> EXCEL_CONTENT_TYPES = new HashSet<>(
 			Arrays.asList("application/xls", "application/xlsx", "application/vnd.ms-excel",
 					"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+	private static final Set<String> XLSX_CONTENT_TYPES = new HashSet<>(
+			Arrays.asList("application/xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
 	private static final Set<String> OPEN_DOCUMENT_CONTENT_TYPES = new HashSet<>(Arrays.asList("application/ods"));
 
+	/**
+	 * @return true for delimited text formats, which can be read from any prefix of the file
+	 */
+	public static boolean isDelimited(String contentType) {
+		return CSV_TAB_CONTENT_TYPES.stream().anyMatch(contentType::startsWith);
+	}
+	
+	/**
+	 * @return the field delimiter of a delimited content type
+	 */
+	public static char delimiter(String contentType) {
+		if (contentType.startsWith("text/tab-separated-values"))
+			return '\t';
+		return contentType.startsWith("text/semicolon-separated-values") ? ';' : ',';
+	}
+	
+	/**
+	 * @return true when files of the content type can be read, compressed files are recognized also by their name
+	 */
+	public static boolean isSupported(String contentType, String fileName) {
+		return Stream.of(CSV_TAB_CONTENT_TYPES, EXCEL_CONTENT_TYPES, OPEN_DOCUMENT_CONTENT_TYPES)
+				.flatMap(Set::stream).anyMatch(contentType::startsWith)
+				|| Compression.isCompressed(contentType, fileName);
+	}
+	
+	/**
+	 * @return true for compressed files, which are read as a stream of the contained file
+	 */
+	public static boolean isCompressed(String contentType, String fileName) {
+		return Compression.isCompressed(contentType, fileName);
+	}
+	
 	public static Reader createReader(DataInfo dataInfo, HttpEntity entity) throws IOException {
+		return createReader(dataInfo, entity, dataInfo.fileName);
+	}
+	
+	private static Reader createReader(DataInfo dataInfo, HttpEntity entity, String fileName) throws IOException {
+		Compression compression = Compression.detect(entity, fileName);
+		if (compression != null) {
+			Compression.Content content = compression.open(entity, fileName);
+			try {
+				return createReader(dataInfo, content.entity, content.name);
+			} catch (IOException | RuntimeException e) {
+				content.entity.getContent().close();
+				throw e;
+			}
+		}
+		
 		String contentType = entity.getContentType().getValue();
 		Reader reader;
 
-		if (CSV_TAB_CONTENT_TYPES.stream().anyMatch(contentType::startsWith)) {
+		if (entity instanceof LocalFileEntity && isDelimited(contentType)) {
+			reader = new DelimitedReader(dataInfo, entity, delimiter(contentType));
+		} else if (CSV_TAB_CONTENT_TYPES.stream().anyMatch(contentType::startsWith)) {
 			reader = new CSVReader(dataInfo, entity);
 		} else if (EXCEL_CONTENT_TYPES.stream().anyMatch(contentType::startsWith)) {
-			reader = new ExcelReader(dataInfo, entity);
+			if (XLSX_CONTENT_TYPES.stream().anyMatch(contentType::startsWith)
+					|| fileName != null && fileName.endsWith(".xlsx")) {
+				reader = new XlsxReader(dataInfo, entity);
+			} else {
+				reader = new XlsReader(dataInfo, entity);
+			}
 		} else if (OPEN_DOCUMENT_CONTENT_TYPES.stream().anyMatch(contentType::startsWith)) {
 			reader = new ODSReader(dataInfo, entity);
 		} else {
@@ -77,7 +141,47 @@ public abstract class Reader implements Iterator<List<String>>, Closeable {
 	
 	protected abstract void initIterator() throws IOException;
 	
+	/**
+	 * Returns the next row like {@link #next()}, readers able to expose cells without creating strings
+	 * override this to return lighter views.
+	 */
+	public List<? extends CharSequence> nextFields() {
+		return next();
+	}
+	
 	public List<String> getColumns() {
 		return columns;
 	}
+	
+	/**
+	 * Copies the entity content to a temporary file, for formats which need random access.
+	 * Content which is already stored locally is used in place.
+	 */
+	protected Path localFile(String suffix) throws IOException {
+		if (entity instanceof LocalFileEntity)
+			return ((LocalFileEntity) entity).getFile().toPath();
+		localFile = Files.createTempFile("dataverse-superset-", suffix);
+		try (InputStream content = entity.getContent()) {
+			Files.copy(content, localFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return localFile;
+	}
+	
+	protected void deleteLocalFile() throws IOException {
+		if (localFile != null)
+			Files.deleteIfExists(localFile);
+	}
+	
+	/**
+	 * Formats spreadsheet numbers, whole numbers are written without the fraction.
+	 */
+	protected static String formatNumber(double value) {
+		if (value == Math.floor(value) && Math.abs(value) < 0x1p63) {
+			return Long.toString((long) value);
+		}
+		if (value == Math.floor(value) && !Double.isInfinite(value)) {
+			return BigDecimal.valueOf(value).toBigInteger().toString();
+		}
+		return Double.toString(value);
+	}
 }
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+/**
+ * Quoting state of delimited text between bytes, as {@link DelimitedReader} tokenizes it. A quote only opens
+ * a quoted field at the start of the field, elsewhere it is literal, and line feeds outside quotes end records.
+ */
+public final class RecordScanner {
+	
+	/**
+	 * State at the start of a field, and so at the start of a record.
+	 */
+	public static final int FIELD_START = 0;
+	static final int UNQUOTED = 1;
+	static final int QUOTED = 2;
+	static final int QUOTE = 3;
+	static final int STATES = 4;
+	
+	private final byte delimiter;
+	private final boolean tabSeparated;
+	
+	public RecordScanner(char delimiter) {
+		this.delimiter = (byte) delimiter;
+		this.tabSeparated = delimiter == '\t';
+	}
+	
+	/**
+	 * @return the state after the byte
+	 */
+	public int next(int state, byte b) {
+		switch (state) {
+		case QUOTED:
+			return b == '"' ? QUOTE : QUOTED;
+		case QUOTE:
+			//an escaped quote, or the closing one followed by ignored bytes up to the delimiter
+			if (b == '"')
+				return QUOTED;
+			return isDelimiter(b) ? FIELD_START : UNQUOTED;
+		case FIELD_START:
+			if (b == '"')
+				return QUOTED;
+			if (isDelimiter(b) || tabSeparated && isSpace(b))
+				return FIELD_START;
+			return UNQUOTED;
+		default:
+			//quotes inside unquoted fields are literal
+			return isDelimiter(b) ? FIELD_START : UNQUOTED;
+		}
+	}
+	
+	/**
+	 * @return true when the byte read in the state ends a record
+	 */
+	public static boolean endsRecord(int state, byte b) {
+		return b == '\n' && state != QUOTED;
+	}
+	
+	boolean isDelimiter(byte b) {
+		return b == delimiter || b == '\n' || b == '\r';
+	}
+	
+	static boolean isSpace(byte b) {
+		return b == ' ' || b == '\f' || b == 0x0b;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 SSHOC Dataverse
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cell value viewed in place over UTF-8 bytes. {@link #charAt(int)} and {@link #length()} work on bytes,
+ * which is exact for the ASCII values parsed into typed columns; non ASCII bytes never match those formats.
+ * {@link #toString()} decodes the value properly.
+ */
+public final class Utf8Slice implements CharSequence {
+	
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+	
+	Utf8Slice(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new Utf8Slice(buffer, offset + start, end - start);
+	}
+	
+	/**
+	 * Copies the raw bytes of the value into the destination array.
+	 */
+	public void copyTo(byte[] destination, int position) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.get(destination, position, length);
+	}
+	
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[length];
+		copyTo(bytes, 0);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import eu.sshoc.dataversesuperset.DataInfo;
+import org.apache.http.HttpEntity;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader of the first sheet of a legacy .xls workbook. BIFF records are pulled one by one
+ * from the workbook stream, the same way {@code HSSFEventFactory} feeds its listeners, and cells are
+ * grouped into rows as they arrive.
+ */
+public class XlsReader extends Reader {
+	
+	//cached formula result types, the codes of CellType whose getters are deprecated
+	private static final int RESULT_NUMERIC = 0;
+	private static final int RESULT_STRING = 1;
+	private static final int RESULT_BOOLEAN = 4;
+	private static final int RESULT_ERROR = 5;
+	
+	private POIFSFileSystem fileSystem;
+	private InputStream workbookStream;
+	private RecordFactoryInputStream records;
+	private SSTRecord sharedStrings;
+	private int sheetCount;
+	private int nestedStreams;
+	private boolean sheetEnded;
+	
+	private final Deque<CellValue> pendingCells = new ArrayDeque<>();
+	private FormulaRecord pendingFormula;
+	private List<String> nextRow;
+	
+	protected XlsReader(DataInfo dataInfo, HttpEntity entity) {
+		super(dataInfo, entity);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return nextRow != null;
+	}
+	
+	@Override
+	public List<String> next() {
+		if (nextRow == null)
+			throw new NoSuchElementException();
+		List<String> row = nextRow;
+		nextRow = readRow(columns.size());
+		return row;
+	}
+	
+	@Override
+	protected void initIterator() throws IOException {
+		//POIFS reads the whole stream into memory unless it is backed by a file
+		fileSystem = new POIFSFileSystem(localFile(".xls").toFile(), true);
+		workbookStream = fileSystem.createDocumentInputStream(HSSFWorkbook.getWorkbookDirEntryName(fileSystem.getRoot()));
+		records = new RecordFactoryInputStream(workbookStream, true);
+		
+		//first row - column names
+		List<String> header = readRow(Integer.MAX_VALUE);
+		if (header != null) {
+			int last = header.size() - 1;
+			while (last >= 0 && header.get(last).isEmpty())
+				last--;
+			columns.addAll(header.subList(0, last + 1));
+			nextRow = readRow(columns.size());
+		}
+	}
+	
+	private List<String> readRow(int columnLimit) {
+		CellValue cell = nextCell();
+		if (cell == null)
+			return null;
+		
+		int row = cell.row;
+		List<String> cells = new ArrayList<>();
+		for (; cell != null && cell.row == row; cell = nextCell()) {
+			if (cell.column < columnLimit) {
+				if (cells.size() <= cell.column)
+					cells.addAll(Collections.nCopies(cell.column + 1 - cells.size(), ""));
+				cells.set(cell.column, cell.value);
+			}
+		}
+		if (cell != null)
+			pendingCells.addFirst(cell);
+		if (columnLimit != Integer.MAX_VALUE && cells.size() < columnLimit)
+			cells.addAll(Collections.nCopies(columnLimit - cells.size(), ""));
+		return cells;
+	}
+	
+	/**
+	 * @return next cell of the first worksheet, or null after its end
+	 */
+	private CellValue nextCell() {
+		if (!pendingCells.isEmpty())
+			return pendingCells.removeFirst();
+		
+		while (!sheetEnded) {
+			Record record = records.nextRecord();
+			if (record == null) {
+				sheetEnded = true;
+			} else if (record instanceof BOFRecord) {
+				if (sheetCount == 1)
+					nestedStreams++; //e.g. a chart embedded in the sheet
+				else if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET)
+					sheetCount++;
+			} else if (record instanceof EOFRecord) {
+				if (nestedStreams > 0)
+					nestedStreams--;
+				else if (sheetCount > 0)
+					sheetEnded = true;
+			} else if (record instanceof SSTRecord) {
+				sharedStrings = (SSTRecord) record;
+			} else if (sheetCount == 1 && nestedStreams == 0) {
+				CellValue cell = toCell(record);
+				if (cell != null)
+					return cell;
+				if (!pendingCells.isEmpty())
+					return pendingCells.removeFirst();
+			}
+		}
+		return null;
+	}
+	
+	private CellValue toCell(Record record) {
+		if (record instanceof LabelSSTRecord) {
+			LabelSSTRecord label = (LabelSSTRecord) record;
+			return new CellValue(label.getRow(), label.getColumn(),
+					sharedStrings.getString(label.getSSTIndex()).getString());
+		} else if (record instanceof LabelRecord) {
+			LabelRecord label = (LabelRecord) record;
+			return new CellValue(label.getRow(), label.getColumn(), label.getValue());
+		} else if (record instanceof NumberRecord) {
+			NumberRecord number = (NumberRecord) record;
+			return new CellValue(number.getRow(), number.getColumn(), formatNumber(number.getValue()));
+		} else if (record instanceof RKRecord) {
+			RKRecord number = (RKRecord) record;
+			return new CellValue(number.getRow(), number.getColumn(), formatNumber(number.getRKNumber()));
+		} else if (record instanceof MulRKRecord) {
+			MulRKRecord numbers = (MulRKRecord) record;
+			for (int i = 0; i < numbers.getNumColumns(); i++) {
+				pendingCells.addLast(new CellValue(numbers.getRow(), numbers.getFirstColumn() + i,
+						formatNumber(numbers.getRKNumberAt(i))));
+			}
+		} else if (record instanceof BoolErrRecord) {
+			BoolErrRecord boolErr = (BoolErrRecord) record;
+			return new CellValue(boolErr.getRow(), boolErr.getColumn(), boolErr.isBoolean()
+					? Boolean.toString(boolErr.getBooleanValue()) : Byte.toString(boolErr.getErrorValue()));
+		} else if (record instanceof FormulaRecord) {
+			FormulaRecord formula = (FormulaRecord) record;
+			switch (formula.getCachedResultType()) {
+			case RESULT_STRING:
+				//the text result follows in a separate record
+				pendingFormula = formula;
+				break;
+			case RESULT_NUMERIC:
+				return new CellValue(formula.getRow(), formula.getColumn(), formatNumber(formula.getValue()));
+			case RESULT_BOOLEAN:
+				return new CellValue(formula.getRow(), formula.getColumn(), Boolean.toString(formula.getCachedBooleanValue()));
+			case RESULT_ERROR:
+				return new CellValue(formula.getRow(), formula.getColumn(), Integer.toString(formula.getCachedErrorValue()));
+			default:
+				break;
+			}
+		} else if (record instanceof StringRecord && pendingFormula != null) {
+			CellValue cell = new CellValue(pendingFormula.getRow(), pendingFormula.getColumn(),
+					((StringRecord) record).getString());
+			pendingFormula = null;
+			return cell;
+		}
+		return null;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			if (workbookStream != null)
+				workbookStream.close();
+			if (fileSystem != null)
+				fileSystem.close();
+		} finally {
+			deleteLocalFile();
+		}
+	}
+	
+	private static class CellValue {
+		final int row;
+		final int column;
+		final String value;
+		
+		CellValue(int row, int column, String value) {
+			this.row = row;
+			this.column = column;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import eu.sshoc.dataversesuperset.DataInfo;
+import org.apache.http.HttpEntity;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader of the first sheet of an .xlsx workbook. The sheet XML is pulled row by row,
+ * only the shared strings table is kept in memory.
+ */
+public class XlsxReader extends Reader {
+	
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+	
+	static {
+		//workbooks are uploaded by users, no DTDs or external entities are resolved
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	private OPCPackage opcPackage;
+	private ReadOnlySharedStringsTable sharedStrings;
+	private InputStream sheetStream;
+	private XMLStreamReader xml;
+	private List<String> nextRow;
+	
+	protected XlsxReader(DataInfo dataInfo, HttpEntity entity) {
+		super(dataInfo, entity);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return nextRow != null;
+	}
+	
+	@Override
+	public List<String> next() {
+		if (nextRow == null)
+			throw new NoSuchElementException();
+		List<String> row = nextRow;
+		try {
+			nextRow = readRow(columns.size());
+		} catch (XMLStreamException e) {
+			throw new UncheckedIOException(new IOException("invalid sheet content", e));
+		}
+		return row;
+	}
+	
+	@Override
+	protected void initIterator() throws IOException {
+		try {
+			//zip entries need random access, so the workbook is read from a local file
+			opcPackage = OPCPackage.open(localFile(".xlsx").toFile(), PackageAccess.READ);
+			XSSFReader xssfReader = new XSSFReader(opcPackage);
+			sharedStrings = new ReadOnlySharedStringsTable(opcPackage, false);
+			sheetStream = xssfReader.getSheetsData().next();
+			xml = XML_INPUT_FACTORY.createXMLStreamReader(sheetStream);
+			
+			//first row - column names
+			List<String> header = readRow(Integer.MAX_VALUE);
+			if (header != null) {
+				int last = header.size() - 1;
+				while (last >= 0 && header.get(last).isEmpty())
+					last--;
+				columns.addAll(header.subList(0, last + 1));
+				nextRow = readRow(columns.size());
+			}
+		} catch (OpenXML4JException | SAXException | XMLStreamException e) {
+			throw new IOException("invalid xlsx file", e);
+		}
+	}
+	
+	private List<String> readRow(int columnLimit) throws XMLStreamException {
+		while (xml.hasNext()) {
+			if (xml.next() == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName()))
+				break;
+		}
+		if (!xml.hasNext())
+			return null;
+		
+		List<String> cells = new ArrayList<>();
+		int column = 0;
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName()))
+				break;
+			if (event == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+				String reference = xml.getAttributeValue(null, "r");
+				if (reference != null)
+					column = columnIndex(reference);
+				String value = readCell(xml.getAttributeValue(null, "t"));
+				if (column < columnLimit) {
+					if (cells.size() <= column)
+						cells.addAll(Collections.nCopies(column + 1 - cells.size(), ""));
+					cells.set(column, value);
+				}
+				column++;
+			}
+		}
+		if (columnLimit != Integer.MAX_VALUE && cells.size() < columnLimit)
+			cells.addAll(Collections.nCopies(columnLimit - cells.size(), ""));
+		return cells;
+	}
+	
+	/**
+	 * Reads the cell content up to the closing {@code c} element.
+	 */
+	private String readCell(String type) throws XMLStreamException {
+		StringBuilder value = new StringBuilder();
+		StringBuilder inlineText = new StringBuilder();
+		boolean inValue = false;
+		boolean inText = false;
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				inValue = "v".equals(xml.getLocalName());
+				inText = "t".equals(xml.getLocalName());
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if ("c".equals(xml.getLocalName()))
+					break;
+				inValue = false;
+				inText = false;
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				if (inValue)
+					value.append(xml.getText());
+				else if (inText)
+					inlineText.append(xml.getText());
+			}
+		}
+		
+		if (type == null)
+			type = "n";
+		switch (type) {
+		case "s":
+			return value.length() == 0 ? "" : sharedStrings.getItemAt(Integer.parseInt(value.toString())).getString();
+		case "inlineStr":
+			return inlineText.toString();
+		case "b":
+			return Boolean.toString("1".contentEquals(value));
+		case "n":
+			return value.length() == 0 ? "" : formatNumber(Double.parseDouble(value.toString()));
+		default:
+			//str (formula result) and e (error) are stored as text
+			return value.toString();
+		}
+	}
+	
+	private static int columnIndex(String reference) {
+		int index = 0;
+		for (int i = 0; i < reference.length() && Character.isLetter(reference.charAt(i)); i++) {
+			index = index * 26 + (Character.toUpperCase(reference.charAt(i)) - 'A' + 1);
+		}
+		return index - 1;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			if (xml != null)
+				xml.close();
+			if (sheetStream != null)
+				sheetStream.close();
+			if (opcPackage != null)
+				opcPackage.revert();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			deleteLocalFile();
+		}
+	}
+}
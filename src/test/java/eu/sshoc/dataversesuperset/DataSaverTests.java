@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnInfo;
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import eu.sshoc.dataversesuperset.readers.LocalFileEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DataSaverTests {
+	
+	@TempDir
+	Path directory;
+	
+	private final DataInfo dataInfo = new DataInfo("http://localhost", "42", "http://localhost/api/access/datafile/42");
+	private final ImportCancellation cancellation = new ImportCancellation();
+	private SpoolCache spoolCache;
+	private ImportCatalog importCatalog;
+	private ImportPipeline importPipeline;
+	private JdbcTemplate jdbcTemplate;
+	private DataSaver dataSaver;
+	
+	@BeforeEach
+	void createDataSaver() throws Exception {
+		dataInfo.fileName = "data.csv";
+		dataInfo.columns = List.of(new ColumnInfo("a", ColumnType.INTEGER), new ColumnInfo("b", ColumnType.TEXT));
+		spoolCache = mock(SpoolCache.class);
+		importCatalog = mock(ImportCatalog.class);
+		importPipeline = mock(ImportPipeline.class);
+		DataSource dataSource = mock(DataSource.class);
+		when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+		jdbcTemplate = mock(JdbcTemplate.class);
+		when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
+		TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+		when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+				invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		
+		dataSaver = new DataSaver();
+		ReflectionTestUtils.setField(dataSaver, "logger", LoggerFactory.getLogger(DataSaver.class));
+		ReflectionTestUtils.setField(dataSaver, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(dataSaver, "transactionTemplate", transactionTemplate);
+		ReflectionTestUtils.setField(dataSaver, "importConfig", Map.of());
+		ReflectionTestUtils.setField(dataSaver, "importPipeline", importPipeline);
+		ReflectionTestUtils.setField(dataSaver, "spoolCache", spoolCache);
+		ReflectionTestUtils.setField(dataSaver, "importCatalog", importCatalog);
+		ReflectionTestUtils.setField(dataSaver, "importCheckpoints", mock(ImportCheckpoints.class));
+	}
+	
+	@Test
+	void firstImport() throws Exception {
+		SpoolCache.Entry entry = spool("a,b\n1,x\n");
+		when(importPipeline.run(any(), any(), any())).thenReturn(1L);
+		
+		assertTrue(dataSaver.createTable(dataInfo, cancellation));
+		String tableName = dataInfo.getName();
+		verify(jdbcTemplate).execute("ALTER TABLE " + tableName + "_staging RENAME TO " + tableName);
+		verify(importCatalog).record(eq(tableName), anyString(), eq(entry), eq(1L));
+		verify(entry).close();
+	}
+	
+	@Test
+	void appendFallsBackOnConversionFailures() throws Exception {
+		SpoolCache.Entry entry = spool("a,b\n1,x\nnot a number,y\n");
+		ImportCatalog.Entry imported = new ImportCatalog.Entry();
+		imported.size = "a,b\n1,x\n".length();
+		imported.sha256 = SpoolCache.sha256(entry.getFile(), imported.size);
+		imported.rowCount = 1;
+		when(importCatalog.find(dataInfo.getName())).thenReturn(imported);
+		when(importPipeline.runFrom(any(), anyLong(), any(), any())).thenThrow(new IllegalArgumentException("not a number"));
+		when(importPipeline.run(any(), any(), any())).thenReturn(2L);
+		
+		dataSaver.createTable(dataInfo, cancellation);
+		verify(importCatalog).record(eq(dataInfo.getName()), anyString(), eq(entry), eq(2L));
+	}
+	
+	private SpoolCache.Entry spool(String text) throws IOException {
+		Path file = Files.writeString(directory.resolve("data.csv"), text);
+		SpoolCache.Entry entry = mock(SpoolCache.Entry.class);
+		when(entry.getEntity()).thenReturn(new LocalFileEntity(file.toFile(), "text/comma-separated-values"));
+		when(entry.getFile()).thenReturn(file);
+		when(entry.getSize()).thenReturn(Files.size(file));
+		when(spoolCache.open(dataInfo.fileUrl, null, null, cancellation)).thenReturn(entry);
+		return entry;
+	}
+}
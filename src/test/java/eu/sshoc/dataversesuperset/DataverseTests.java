@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import com.sun.net.httpserver.HttpServer;
+import eu.sshoc.dataversesuperset.DataInfo.ColumnInfo;
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataverseTests {
+	
+	private HttpServer server;
+	private CloseableHttpClient httpClient;
+	private Dataverse dataverse;
+	
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/access/datafile/42/metadata/ddi", exchange -> {
+			try (InputStream fixture = getClass().getResourceAsStream("/ddi.xml")) {
+				byte[] body = fixture.readAllBytes();
+				exchange.getResponseHeaders().add("Content-Type", "application/xml");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.start();
+		httpClient = HttpClients.createDefault();
+		dataverse = new Dataverse();
+		ReflectionTestUtils.setField(dataverse, "logger", LoggerFactory.getLogger(Dataverse.class));
+		ReflectionTestUtils.setField(dataverse, "httpClient", httpClient);
+	}
+	
+	@AfterEach
+	void stopServer() throws IOException {
+		httpClient.close();
+		server.stop(0);
+	}
+	
+	@Test
+	void findColumns() {
+		List<ColumnInfo> columns = dataverse.findColumns(dataInfo("42"));
+		assertEquals(List.of("id", "income", "city", "born", "seen"),
+				columns.stream().map(c -> c.name).collect(Collectors.toList()));
+		assertEquals(List.of(ColumnType.INTEGER, ColumnType.FLOATING, ColumnType.TEXT, ColumnType.DATE, ColumnType.DATETIME),
+				columns.stream().map(c -> c.type).collect(Collectors.toList()));
+	}
+	
+	@Test
+	void missingMetadata() {
+		assertTrue(dataverse.findColumns(dataInfo("7")).isEmpty());
+	}
+	
+	private DataInfo dataInfo(String fileId) {
+		String siteUrl = "http://localhost:" + server.getAddress().getPort();
+		return new DataInfo(siteUrl, fileId, siteUrl + "/api/access/datafile/" + fileId);
+	}
+}
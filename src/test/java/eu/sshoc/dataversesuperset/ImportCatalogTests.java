@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImportCatalogTests {
+	
+	@TempDir
+	Path directory;
+	
+	private HttpServer server;
+	private CloseableHttpClient httpClient;
+	private SpoolCache spoolCache;
+	private String url;
+	private volatile String body;
+	private volatile String etag;
+	
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/access/datafile/42", exchange -> {
+			byte[] content = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/comma-separated-values");
+			if (etag != null)
+				exchange.getResponseHeaders().add("ETag", etag);
+			exchange.sendResponseHeaders(200, content.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(content);
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/api/access/datafile/42";
+		httpClient = HttpClients.createDefault();
+		spoolCache = new SpoolCache();
+		ReflectionTestUtils.setField(spoolCache, "logger", LoggerFactory.getLogger(SpoolCache.class));
+		ReflectionTestUtils.setField(spoolCache, "httpClient", httpClient);
+		//files without validators are downloaded again on every request
+		ReflectionTestUtils.setField(spoolCache, "spoolConfig", Map.of("directory", directory.toString(), "max-age", "0s"));
+		spoolCache.init();
+	}
+	
+	@AfterEach
+	void stopServer() throws IOException {
+		httpClient.close();
+		server.stop(0);
+	}
+	
+	@Test
+	void sameSizeWithOtherContentIsImportedAgain() throws IOException {
+		body = "a,b\n1,x\n";
+		ImportCatalog.Entry imported = record();
+		body = "a,b\n2,y\n";
+		try (SpoolCache.Entry file = spoolCache.open(url)) {
+			assertEquals(imported.size, file.getSize());
+			assertNotEquals(imported.sha256, file.getSha256());
+			assertFalse(imported.matches(file));
+		}
+		body = "a,b\n1,x\n";
+		try (SpoolCache.Entry file = spoolCache.open(url)) {
+			assertTrue(imported.matches(file));
+		}
+	}
+	
+	@Test
+	void validatorsMatchWithoutDigest() throws IOException {
+		body = "a,b\n1,x\n";
+		etag = "\"v1\"";
+		ImportCatalog.Entry imported = record();
+		//recorded before digests were kept
+		imported.sha256 = null;
+		try (SpoolCache.Entry file = spoolCache.open(url)) {
+			assertTrue(imported.matches(file));
+		}
+		imported.etag = "\"v0\"";
+		try (SpoolCache.Entry file = spoolCache.open(url)) {
+			assertFalse(imported.matches(file));
+		}
+	}
+	
+	private ImportCatalog.Entry record() throws IOException {
+		try (SpoolCache.Entry file = spoolCache.open(url)) {
+			ImportCatalog.Entry entry = new ImportCatalog.Entry();
+			entry.fileUrl = url;
+			entry.etag = file.getEtag();
+			entry.lastModified = file.getLastModified();
+			entry.size = file.getSize();
+			entry.sha256 = file.getSha256();
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnInfo;
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImportJobsTests {
+	
+	@Test
+	void columnsRoundTrip() {
+		List<ColumnInfo> columns = List.of(new ColumnInfo("name\twith tab", ColumnType.TEXT),
+				new ColumnInfo("two\nlines", ColumnType.INTEGER), new ColumnInfo("", ColumnType.DATE));
+		assertEquals(describe(columns), describe(job(ImportJobs.toJson(columns)).toDataInfo().columns));
+		assertEquals(List.of(), job(ImportJobs.toJson(List.of())).toDataInfo().columns);
+	}
+	
+	@Test
+	void invalidColumns() {
+		assertThrows(IllegalArgumentException.class, () -> job("a\tTEXT").toDataInfo());
+		assertThrows(IllegalArgumentException.class, () -> job("[{\"name\": \"a\", \"type\": \"BLOB\"}]").toDataInfo());
+	}
+	
+	private static ImportJobs.Job job(String columns) {
+		ImportJobs.Job job = new ImportJobs.Job();
+		job.fileUrl = "http://localhost/api/access/datafile/42";
+		job.columns = columns;
+		return job;
+	}
+	
+	private static List<String> describe(List<ColumnInfo> columns) {
+		return columns.stream().map(c -> c.name + ":" + c.type).collect(Collectors.toList());
+	}
+}
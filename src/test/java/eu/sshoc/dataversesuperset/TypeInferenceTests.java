@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset;
+
+import eu.sshoc.dataversesuperset.DataInfo.ColumnType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TypeInferenceTests {
+	
+	@Test
+	void inferTypes() {
+		List<List<String>> rows = List.of(
+				List.of("true", "1", "1", "2021-01-05", "10:00:00", "2021-01-05 10:00:00.5", "a"),
+				List.of("FALSE", "-20", "2.5e3", "2021-1-5", "23:59:59", "2021-01-05 10:00:00", ""),
+				List.of("", "", "", "", "", "", "1"));
+		assertEquals(List.of(ColumnType.BOOLEAN, ColumnType.INTEGER, ColumnType.FLOATING, ColumnType.DATE,
+				ColumnType.TIME, ColumnType.DATETIME, ColumnType.TEXT), TypeInference.inferTypes(rows, 7));
+	}
+	
+	@Test
+	void scannersAgreeWithParsers() {
+		for (String value : List.of("0", "+7", "-9223372036854775808", "9223372036854775807", "9223372036854775808", "1.", ".5", "1e",
+				"1e-3", "-", "", " 1", "2021-13-01", "2021-02-31", "2021-02-3x", "24:00:00", "1:02:03",
+				"2021-01-01 10:00:00.1234567891", "2021-01-01T10:00:00", "truee")) {
+			for (DataInfo.ValueParser<?> parser : DataInfo.VALUE_PARSERS.values()) {
+				if (TypeInference.matches(value, parser.columnType)) {
+					assertTrue(parses(parser, value), parser.columnType + " " + value);
+				}
+			}
+		}
+		assertFalse(TypeInference.isInteger("9223372036854775808"));
+		assertTrue(TypeInference.isInteger("-9223372036854775808"));
+		assertFalse(TypeInference.isDateTime("2021-01-01 10:00:00.1234567891"));
+	}
+	
+	private static boolean parses(DataInfo.ValueParser<?> parser, String value) {
+		try {
+			parser.parse(value);
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import eu.sshoc.dataversesuperset.DataInfo;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompressionTests {
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	void spooledSpreadsheetIsNotAnArchive() throws IOException {
+		Path file = directory.resolve("spooled");
+		try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+			Sheet sheet = workbook.createSheet();
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue("a");
+			header.createCell(1).setCellValue("b");
+			Row row = sheet.createRow(1);
+			row.createCell(0).setCellValue(1);
+			row.createCell(1).setCellValue("x");
+			workbook.write(out);
+		}
+		assertEquals(List.of(List.of("a", "b"), List.of("1", "x")),
+				read(file, "data.xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+	}
+	
+	@Test
+	void sniffedGzip() throws IOException {
+		Path file = directory.resolve("spooled");
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+			out.write("a,b\n1,x\n".getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(List.of(List.of("a", "b"), List.of("1", "x")), read(file, "data", "application/octet-stream"));
+	}
+	
+	private static List<List<String>> read(Path file, String fileName, String contentType) throws IOException {
+		DataInfo dataInfo = new DataInfo("http://localhost", "1", "http://localhost/1");
+		dataInfo.fileName = fileName;
+		try (Reader reader = Reader.createReader(dataInfo, new LocalFileEntity(file.toFile(), contentType))) {
+			List<List<String>> rows = new ArrayList<>();
+			rows.add(reader.getColumns());
+			reader.forEachRemaining(rows::add);
+			return rows;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2021 SSHOC Dataverse
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package eu.sshoc.dataversesuperset.readers;
+
+import eu.sshoc.dataversesuperset.DataInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DelimitedReaderTests {
+	
+	private static final String CSV = "text/comma-separated-values";
+	private static final String TSV = "text/tab-separated-values";
+	
+	@TempDir
+	Path directory;
+	
+	@Test
+	void quotedAndEscapedFields() throws IOException {
+		Path file = write("a,b,c\n\"x,1\",\"say \"\"hi\"\"\",plain\n\"multi\nline\",,\"\"\n5\",O\"Brien,\"\"\"\"\n");
+		assertEquals(List.of(List.of("x,1", "say \"hi\"", "plain"), List.of("multi\nline", "", ""),
+				List.of("5\"", "O\"Brien", "\"")), readAll(file, CSV));
+	}
+	
+	@Test
+	void crlfAndByteOrderMark() throws IOException {
+		Path file = write("\uFEFFa,b\r\n1,\"2\r\n3\"\r\n4,5");
+		try (Reader reader = createReader(file, CSV)) {
+			assertEquals(List.of("a", "b"), reader.getColumns());
+		}
+		assertEquals(List.of(List.of("1", "2\r\n3"), List.of("4", "5")), readAll(file, CSV));
+	}
+	
+	@Test
+	void emptyLines() throws IOException {
+		assertEquals(List.of(List.of("1", "2"), List.of("3", "4")), readAll(write("a\tb\n1\t2\n\n 3 \t \"4\"\n\n"), TSV));
+		assertEquals(List.of(List.of("1", "2"), List.of(""), List.of("3", "4")), readAll(write("a,b\n1,2\n\n3,4\n"), CSV));
+	}
+	
+	@Test
+	void unterminatedQuote() throws IOException {
+		Path file = write("a,b\n1,2\n3,\"4\n");
+		assertThrows(UncheckedIOException.class, () -> readAll(file, CSV));
+	}
+	
+	@Test
+	void recordsCrossingWindows() throws IOException {
+		Path file = write(generate(200, new Random(1)));
+		try (DelimitedReader reader = (DelimitedReader) createReader(file, CSV)) {
+			List<List<String>> records = read(reader.cursor(reader.getDataStart(), reader.getFileSize()));
+			for (int windowSize : new int[] {5, 64}) {
+				assertEquals(records, read(reader.cursor(reader.getDataStart(), reader.getFileSize(), windowSize)));
+			}
+			assertEquals(200, records.size());
+		}
+	}
+	
+	@Test
+	void splitAtRecordBoundaries() throws IOException {
+		Path file = write(generate(500, new Random(2)));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try (DelimitedReader reader = (DelimitedReader) createReader(file, CSV)) {
+			List<List<String>> records = read(reader.cursor(reader.getDataStart(), reader.getFileSize()));
+			for (long partSize : new long[] {16, 100, 4096, 1 << 20}) {
+				long[] boundaries = reader.split(reader.getDataStart(), reader.getFileSize(), partSize, pool);
+				List<List<String>> parts = new ArrayList<>();
+				for (int i = 0; i + 1 < boundaries.length; i++) {
+					parts.addAll(read(reader.cursor(boundaries[i], boundaries[i + 1])));
+				}
+				assertEquals(records, parts, "part size " + partSize);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	void sameRecordsAsCsvReader() throws IOException {
+		Random random = new Random(3);
+		Path csv = write(generate(500, random));
+		assertEquals(readAll(csv, CSV, true), readAll(csv, CSV));
+		Path tsv = write(generate(500, random).replace(',', '\t'));
+		assertEquals(readAll(tsv, TSV, true), readAll(tsv, TSV));
+	}
+	
+	@Test
+	void utf8Slice() {
+		byte[] bytes = "x,żółw,y".getBytes(StandardCharsets.UTF_8);
+		Utf8Slice slice = new Utf8Slice(ByteBuffer.wrap(bytes), 2, bytes.length - 4);
+		assertEquals("żółw", slice.toString());
+		assertEquals(7, slice.length());
+		assertEquals('w', slice.charAt(6));
+		assertEquals("w", slice.subSequence(6, 7).toString());
+		byte[] copy = new byte[slice.length() + 1];
+		slice.copyTo(copy, 1);
+		assertEquals("żółw", new String(copy, 1, slice.length(), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Records with quoted line breaks and delimiters, escaped quotes, and quotes inside unquoted fields.
+	 */
+	private static String generate(int records, Random random) {
+		String[] values = {"1", "2.5", "", "plain text", "\"quoted, with delimiter\"", "\"two\nlines\"",
+				"\"escaped \"\" quote\"", "5\"", "O\"Brien", "\"\"", "żółw", "\"\r\n\""};
+		StringBuilder text = new StringBuilder("a,b,c\n");
+		for (int i = 0; i < records; i++) {
+			for (int j = 0; j < 3; j++) {
+				text.append(j == 0 ? "" : ",").append(values[random.nextInt(values.length)]);
+			}
+			text.append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+		}
+		return text.toString();
+	}
+	
+	private Path write(String text) throws IOException {
+		return Files.writeString(Files.createTempFile(directory, "test", ".txt"), text);
+	}
+	
+	private static Reader createReader(Path file, String contentType) throws IOException {
+		DataInfo dataInfo = new DataInfo("http://localhost", "1", "http://localhost/1");
+		dataInfo.fileName = file.getFileName().toString();
+		return Reader.createReader(dataInfo, new LocalFileEntity(file.toFile(), contentType));
+	}
+	
+	private static List<List<String>> readAll(Path file, String contentType) throws IOException {
+		return readAll(file, contentType, false);
+	}
+	
+	private static List<List<String>> readAll(Path file, String contentType, boolean streamed) throws IOException {
+		DataInfo dataInfo = new DataInfo("http://localhost", "1", "http://localhost/1");
+		try (Reader reader = streamed ? new CSVReader(dataInfo, new LocalFileEntity(file.toFile(), contentType))
+				: createReader(file, contentType)) {
+			if (streamed)
+				reader.initIterator();
+			List<List<String>> records = new ArrayList<>();
+			reader.forEachRemaining(records::add);
+			return records;
+		}
+	}
+	
+	private static List<List<String>> read(DelimitedReader.Cursor cursor) throws IOException {
+		List<List<String>> records = new ArrayList<>();
+		for (List<Utf8Slice> record; (record = cursor.next()) != null; ) {
+			List<String> values = new ArrayList<>();
+			record.forEach(value -> values.add(value.toString()));
+			records.add(values);
+		}
+		return records;
+	}
+}